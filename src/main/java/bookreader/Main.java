@@ -2,12 +2,46 @@ package bookreader;
 
 import bookreader.javafx.JavaFxApplication;
 import javafx.application.Application;
+import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+import java.util.Arrays;
+import java.util.Set;
 
 @SpringBootApplication
 public class Main {
 
+	/**
+	 * Profiles that run without any window: "batch" processes files in bulk
+	 * and "tune" searches for the best OCR configuration.
+	 */
+	public static final Set<String> HEADLESS_PROFILES = Set.of("batch", "tune");
+
 	public static void main(String[] args) {
+		if (isHeadless(args)) {
+			// the runner of the profile does all the work while the context starts
+			System.exit(SpringApplication.exit(new SpringApplicationBuilder(Main.class)
+					.headless(true)
+					.run(args)));
+		}
 		Application.launch(JavaFxApplication.class, args);
 	}
+
+	/**
+	 * Checks whether a headless profile is activated through the arguments, a
+	 * system property or the environment.
+	 * @param args Command line arguments.
+	 * @return True if one of {@link Main#HEADLESS_PROFILES} is active, false
+	 * otherwise.
+	 */
+	private static boolean isHeadless(String[] args) {
+		String profiles = Arrays.stream(args)
+				.filter(x -> x.startsWith("--spring.profiles.active="))
+				.map(x -> x.substring("--spring.profiles.active=".length()))
+				.findFirst()
+				.orElse(System.getProperty("spring.profiles.active", System.getenv("SPRING_PROFILES_ACTIVE")));
+		if (profiles == null) return false;
+		return Arrays.stream(profiles.split(",")).map(String::trim).anyMatch(HEADLESS_PROFILES::contains);
+	}
 }
@@ -0,0 +1,215 @@
+package bookreader.components;
+
+import bookreader.models.OCRSettings;
+import bookreader.models.PreprocessingStage;
+import net.sourceforge.tess4j.ITesseract;
+import net.sourceforge.tess4j.TesseractException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Recognises every image and document in a folder without opening any
+ * window. Only active in the "batch" profile, for example:
+ * <pre>
+ * java -jar bookreader.jar --spring.profiles.active=batch --batch.input=scans --batch.output=books
+ * </pre>
+ * Files are processed through the {@link FileProcesser} on a pool of
+ * workers. The output folder mirrors the input folder: the text of every
+ * file is written under the same relative path, with ".txt" added after its
+ * full name so that "1.png" and "1.pdf" don't overwrite each other.
+ * Optionally hOCR and searchable PDF versions are rendered by Tesseract
+ * next to it, which recognises the file a second time, so they are off by
+ * default. When all files are done, the throughput, the latency of the
+ * files and the average time of every preprocessing stage are printed.
+ */
+@Component
+@Profile("batch")
+public class BatchRunner implements ApplicationRunner {
+
+    /**
+     * Extensions of the files that are processed.
+     */
+    private static final Set<String> EXTENSIONS = Set.of("png", "jpg", "jpeg", "bmp", "tif", "tiff", "pdf");
+    /**
+     * Settings the hOCR and PDF outputs are rendered with.
+     */
+    private static final OCRSettings RENDER_SETTINGS = OCRSettings.of("bul+eng");
+
+    /**
+     * Folder with the files to process.
+     */
+    private final String input;
+    /**
+     * Folder where the outputs are written.
+     */
+    private final Path output;
+    /**
+     * Amount of files processed at the same time.
+     */
+    private final int workers;
+    /**
+     * Formats written for every file besides the plain text. Each of them
+     * costs another recognition of the file.
+     */
+    private final List<ITesseract.RenderedFormat> renderedFormats;
+
+    // Dependencies
+    private final FileProcesser fileProcesser;
+    private final TesseractPool tesseractPool;
+    private final ImagePreprocessor imagePreprocessor;
+
+    @Autowired
+    public BatchRunner(
+            @Value("${batch.input:}") String input,
+            @Value("${batch.output:output}") String output,
+            @Value("${batch.workers:2}") int workers,
+            @Value("${batch.formats:}") String formats,
+            FileProcesser fileProcesser,
+            TesseractPool tesseractPool,
+            ImagePreprocessor imagePreprocessor
+    ) {
+        this.input = input;
+        this.output = Path.of(output);
+        this.workers = Math.max(1, workers);
+        this.renderedFormats = Arrays.stream(formats.split(","))
+                .map(String::trim)
+                .filter(x -> !x.isEmpty())
+                .map(x -> ITesseract.RenderedFormat.valueOf(x.toUpperCase(Locale.ROOT)))
+                .toList();
+        this.fileProcesser = fileProcesser;
+        this.tesseractPool = tesseractPool;
+        this.imagePreprocessor = imagePreprocessor;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException, InterruptedException {
+        if (input.isEmpty()) {
+            System.out.println("No input folder given. Set it with --batch.input=<folder>");
+            return;
+        }
+        Path root = Path.of(input);
+        List<File> files = findFiles(root);
+        Files.createDirectories(output);
+        System.out.println("Processing " + files.size() + " files with " + workers + " workers");
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger pages = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        long start = System.nanoTime();
+        for (File file : files) {
+            executor.submit(() -> {
+                long fileStart = System.nanoTime();
+                try {
+                    processFile(file, root, pages);
+                } catch (Exception e) {
+                    System.out.println("Failed to process " + file + ": " + e.getMessage());
+                    failures.incrementAndGet();
+                    return;
+                }
+                long latency = System.nanoTime() - fileStart;
+                latencies.add(latency);
+                System.out.printf("%s done in %.1f s%n", file.getName(), latency / 1e9);
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        printReport(System.nanoTime() - start, pages.get(), failures.get(), latencies);
+    }
+
+    /**
+     * Processes a single file and writes its outputs.
+     * @param file The file.
+     * @param root The input folder, whose structure is kept in the output
+     *             folder.
+     * @param pages Counter of all processed pages, incremented for every
+     *              page of the file.
+     * @throws Exception If the file can't be processed or its outputs can't
+     * be written.
+     */
+    private void processFile(File file, Path root, AtomicInteger pages) throws Exception {
+        String text = fileProcesser.processFile(file, (pageIndex, pageText) -> pages.incrementAndGet());
+        if (text == null) throw new IOException("Could not read the file");
+        Path outputPath = output.resolve(root.relativize(file.toPath()));
+        Files.createDirectories(outputPath.getParent());
+        String outputBase = outputPath.toString();
+        Files.writeString(Path.of(outputBase + ".txt"), text, StandardCharsets.UTF_8);
+        if (renderedFormats.isEmpty()) return;
+        tesseractPool.execute(RENDER_SETTINGS, engine -> {
+            engine.createDocuments(file.getAbsolutePath(), outputBase, renderedFormats);
+            return null;
+        });
+    }
+
+    /**
+     * Finds all supported files in a folder and its subfolders.
+     * @param folder The folder.
+     * @return The files, sorted by path.
+     * @throws IOException If the folder can't be read.
+     */
+    private List<File> findFiles(Path folder) throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(x -> EXTENSIONS.contains(extension(x.getFileName().toString())))
+                    .sorted()
+                    .map(Path::toFile)
+                    .toList();
+        }
+    }
+
+    /**
+     * Prints the throughput, latency percentiles and preprocessing times of
+     * the run.
+     * @param elapsed Wall time of the whole run, in nanoseconds.
+     * @param pages Amount of processed pages.
+     * @param failures Amount of files that couldn't be processed.
+     * @param latencies Time every successful file took, in nanoseconds.
+     */
+    private void printReport(long elapsed, int pages, int failures, List<Long> latencies) {
+        List<Long> sorted = latencies.stream().sorted().collect(Collectors.toList());
+        System.out.println("---------------------------------------");
+        System.out.printf("Files: %d done, %d failed%n", sorted.size(), failures);
+        System.out.printf("Pages: %d in %.1f s (%.2f pages/s)%n", pages, elapsed / 1e9, pages / (elapsed / 1e9));
+        Map<PreprocessingStage, Double> preprocessing = imagePreprocessor.getAverageMillis();
+        if (!preprocessing.isEmpty()) {
+            System.out.println("Preprocessing per image: " + preprocessing.entrySet().stream()
+                    .map(x -> String.format("%s %.1f ms", x.getKey(), x.getValue()))
+                    .collect(Collectors.joining(", ")));
+        }
+        if (sorted.isEmpty()) return;
+        System.out.printf("File latency: p50 %.1f s, p90 %.1f s, p99 %.1f s, max %.1f s%n",
+                percentile(sorted, 50) / 1e9, percentile(sorted, 90) / 1e9,
+                percentile(sorted, 99) / 1e9, sorted.get(sorted.size() - 1) / 1e9);
+    }
+
+    /**
+     * Gets a percentile of sorted values with the nearest rank method.
+     * @param sorted The values, in ascending order. Must not be empty.
+     * @param percent The percentile, from 0 to 100.
+     * @return The value at the percentile.
+     */
+    private long percentile(List<Long> sorted, int percent) {
+        int rank = (int)Math.ceil(percent / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, rank - 1));
+    }
+
+    private String extension(String name) {
+        int lastDot = name.lastIndexOf('.');
+        return lastDot == -1 ? "" : name.substring(lastDot + 1).toLowerCase(Locale.ROOT);
+    }
+}
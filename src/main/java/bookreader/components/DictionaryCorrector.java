@@ -0,0 +1,199 @@
+package bookreader.components;
+
+import bookreader.utils.Dawg;
+import bookreader.utils.TextUtils;
+import bookreader.utils.TokenizedText;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Corrects OCR mistakes word by word with a dictionary of Bulgarian and
+ * English words. A word that isn't in the dictionary is replaced with the
+ * only dictionary word within a small edit distance of it, if there is one.
+ *
+ * The dictionary is built from plain text wordlists, one word per line, and
+ * saved as a {@link Dawg} file that is loaded at once on the next start. It's
+ * built again whenever a wordlist is newer than the saved file. If there are
+ * no wordlists, no text is corrected.
+ */
+@Component
+public class DictionaryCorrector {
+
+    /**
+     * The dictionary, or null if there isn't one.
+     */
+    private final Dawg dictionary;
+    /**
+     * Highest edit distance between a word and its correction.
+     */
+    private final int maxDistance;
+    /**
+     * Words shorter than this are never corrected, since too many
+     * dictionary words are close to them.
+     */
+    private final int minLength;
+
+    // Dependencies
+    private final TextUtils textUtils;
+
+    @Autowired
+    public DictionaryCorrector(
+            TextUtils textUtils,
+            @Value("${ocr.dictionary.path:data/dictionary.dawg}") String path,
+            @Value("${ocr.dictionary.wordlists:data/wordlist-bg.txt,data/wordlist-en.txt}") String wordlists,
+            @Value("${ocr.dictionary.max-distance:1}") int maxDistance,
+            @Value("${ocr.dictionary.min-length:4}") int minLength
+    ) {
+        this.textUtils = textUtils;
+        this.maxDistance = maxDistance;
+        this.minLength = minLength;
+        List<Path> wordlistPaths = Arrays.stream(wordlists.split(","))
+                .map(String::trim)
+                .filter(x -> !x.isEmpty())
+                .map(Path::of)
+                .filter(Files::isRegularFile)
+                .toList();
+        this.dictionary = path.isBlank() ? null : loadDictionary(Path.of(path), wordlistPaths);
+    }
+
+    /**
+     * Loads the saved dictionary, or builds it from the wordlists if it's
+     * missing or older than them.
+     * @param path The saved dictionary.
+     * @param wordlists The existing wordlists.
+     * @return The dictionary, or null if there is nothing to load it from.
+     */
+    private Dawg loadDictionary(Path path, List<Path> wordlists) {
+        try {
+            if (Files.isRegularFile(path) && !isOlderThan(path, wordlists)) {
+                return Dawg.load(path);
+            }
+            if (wordlists.isEmpty()) {
+                System.out.println("No dictionary wordlist found, OCR results won't be corrected");
+                return null;
+            }
+            long start = System.currentTimeMillis();
+            Dawg dawg = Dawg.build(readWords(wordlists));
+            dawg.write(path);
+            System.out.printf("Built a dictionary of %d words (%d KB) in %d ms%n", dawg.getWordCount(),
+                    dawg.getEdgeCount() * 8 / 1024, System.currentTimeMillis() - start);
+            return dawg;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private boolean isOlderThan(Path path, List<Path> wordlists) throws IOException {
+        for (Path wordlist : wordlists) {
+            if (Files.getLastModifiedTime(wordlist).compareTo(Files.getLastModifiedTime(path)) > 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads all words of the wordlists. Words are lowercased, and lines that
+     * aren't made only of letters are skipped.
+     * @param wordlists The wordlists.
+     * @return The words, sorted and without duplicates.
+     * @throws IOException If a wordlist can't be read.
+     */
+    private SortedSet<String> readWords(List<Path> wordlists) throws IOException {
+        SortedSet<String> words = new TreeSet<>();
+        for (Path wordlist : wordlists) {
+            try (Stream<String> lines = Files.lines(wordlist, StandardCharsets.UTF_8)) {
+                lines.map(x -> x.strip().toLowerCase(Locale.ROOT))
+                        .filter(x -> !x.isEmpty() && x.chars().allMatch(Character::isLetter))
+                        .forEach(words::add);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Checks whether there is a dictionary to correct text with.
+     * @return True if there is, false otherwise.
+     */
+    public boolean isEnabled() {
+        return this.dictionary != null;
+    }
+
+    /**
+     * Describes the dictionary and the correction settings, so that cached
+     * results corrected differently are not reused.
+     * @return The description.
+     */
+    public String getVersion() {
+        if (dictionary == null) return "no-dictionary";
+        return "dictionary-" + dictionary.getWordCount() + "-" + dictionary.getEdgeCount()
+                + "-" + maxDistance + "-" + minLength;
+    }
+
+    /**
+     * Corrects the words of a text that aren't in the dictionary.
+     * Punctuation around a word is kept, and words with digits or other
+     * symbols inside them are left as they are. The case of a corrected
+     * word follows the original one.
+     * @param text The text.
+     * @return The corrected text, or the same text if there is no
+     * dictionary.
+     */
+    public String correct(String text) {
+        if (dictionary == null) return text;
+        TokenizedText words = textUtils.tokenize(text);
+        StringBuilder ret = null;
+        StringBuilder lowercase = new StringBuilder();
+        int copied = 0;
+        for (int i = 0; i < words.size(); i++) {
+            int start = words.start(i), end = words.end(i);
+            while (start < end && !Character.isLetter(text.charAt(start))) start++;
+            while (end > start && !Character.isLetter(text.charAt(end - 1))) end--;
+            if (end - start < minLength) continue;
+
+            lowercase.setLength(0);
+            boolean lettersOnly = true;
+            for (int j = start; j < end && lettersOnly; j++) {
+                char c = text.charAt(j);
+                lettersOnly = Character.isLetter(c);
+                lowercase.append(Character.toLowerCase(c));
+            }
+            if (!lettersOnly || dictionary.contains(lowercase)) continue;
+            String correction = dictionary.findClosest(lowercase, maxDistance);
+            if (correction == null) continue;
+
+            if (ret == null) ret = new StringBuilder(text.length());
+            ret.append(text, copied, start);
+            appendWithCase(ret, correction, text, start, end);
+            copied = end;
+        }
+        if (ret == null) return text;
+        return ret.append(text, copied, text.length()).toString();
+    }
+
+    /**
+     * Appends a lowercase word in the case of the word it replaces: all
+     * uppercase, capitalised, or as it is.
+     */
+    private void appendWithCase(StringBuilder builder, String word, String text, int start, int end) {
+        boolean firstUpper = Character.isUpperCase(text.charAt(start));
+        boolean allUpper = firstUpper && end - start > 1;
+        for (int j = start + 1; j < end && allUpper; j++) {
+            allUpper = Character.isUpperCase(text.charAt(j));
+        }
+        if (allUpper) {
+            builder.append(word.toUpperCase(Locale.ROOT));
+        } else if (firstUpper) {
+            builder.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+        } else {
+            builder.append(word);
+        }
+    }
+}
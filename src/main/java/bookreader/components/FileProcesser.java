@@ -37,25 +37,36 @@ public class FileProcesser {
      */
     public String processFile(File file) throws UnsupportedExtensionException, IOException,
             FileNotFoundException, NullPointerException {
+        return processFile(file, (pageIndex, text) -> {});
+    }
+
+    /**
+     * Process a file and outputs the text contents of it, giving the text
+     * to a listener page by page as it becomes available. Documents that
+     * aren't split into pages are given to the listener as a single page.
+     * @param file The file to process.
+     * @param listener Receives the text of every page, in order.
+     * @return A string containing all of the text in the file.
+     * @throws UnsupportedExtensionException If the extension is not supported
+     * @throws IOException If there's a problem reading from the file
+     * @throws FileNotFoundException If the file is not found.
+     * @throws NullPointerException If the given file is null.
+     * @see OCR#processFile(File, OCR.PageListener)
+     */
+    public String processFile(File file, OCR.PageListener listener) throws UnsupportedExtensionException,
+            IOException, FileNotFoundException, NullPointerException {
         if (file == null) throw new NullPointerException();
         int lastDot = file.getAbsolutePath().lastIndexOf(".");
         if (lastDot == -1) throw new IOException();
         String extension = file.getAbsolutePath().substring(lastDot + 1).toLowerCase();
 
-        System.out.println(extension);
-
-        switch (extension) {
-            case "txt":
-                return processTxtFile(file);
-            case "png":
-            case "jpg":
-                return ocr.processImage(file);
-            case "pdf":
-            default:
-                return ocr.processFile(file);
-                //throw new UnsupportedExtensionException();
-                // TODO change the default case to try processing the file with tesseract.
+        if (extension.equals("txt") || extension.equals("png") || extension.equals("jpg")) {
+            String text = extension.equals("txt") ? processTxtFile(file) : ocr.processImage(file);
+            listener.pageProcessed(0, text);
+            return text;
         }
+        // pdf, tiff and everything else is read page by page
+        return ocr.processFile(file, listener);
     }
 
     /**
@@ -0,0 +1,319 @@
+package bookreader.components;
+
+import bookreader.models.InputSource;
+import bookreader.models.PreprocessingStage;
+import bookreader.models.StageTiming;
+import bookreader.utils.ImageUtils;
+import com.recognition.software.jdeskew.ImageDeskew;
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Prepares images for OCR by running them through a list of
+ * {@link PreprocessingStage}s. Every {@link InputSource} has its own list of
+ * stages, set in the application properties, for example
+ * {@code ocr.preprocessing.camera=GRAYSCALE,DESKEW,CROP,DOWNSCALE}.
+ *
+ * The wall time of every stage is measured, so that stages which cost more
+ * than they save in recognition time can be found and turned off. The
+ * timings of every image are logged at debug level, their averages are
+ * printed at the end of a batch run.
+ */
+@Component
+public class ImagePreprocessor {
+
+    private static final Logger log = LoggerFactory.getLogger(ImagePreprocessor.class);
+
+    /**
+     * Skew angles smaller than this, in degrees, are not corrected.
+     */
+    private static final double MINIMUM_DESKEW_ANGLE = 0.5;
+    /**
+     * Empty space left around the content when cropping, in pixels.
+     */
+    private static final int CROP_MARGIN = 10;
+    /**
+     * Images whose x-height is within this fraction of the target are not
+     * rescaled, since resizing them costs more than it saves.
+     */
+    private static final double X_HEIGHT_TOLERANCE = 0.15;
+
+    /**
+     * The stages for every input source, in the order they are run.
+     */
+    private final Map<InputSource, List<PreprocessingStage>> stages = new EnumMap<>(InputSource.class);
+
+    /**
+     * Images whose width or height is bigger than this are downscaled by
+     * the {@link PreprocessingStage#DOWNSCALE} stage.
+     */
+    private final int maxDimension;
+    /**
+     * The x-height in pixels that the
+     * {@link PreprocessingStage#NORMALIZE_RESOLUTION} stage scales text to.
+     */
+    private final int targetXHeight;
+    /**
+     * Smallest and biggest factor the
+     * {@link PreprocessingStage#NORMALIZE_RESOLUTION} stage scales by.
+     */
+    private final double minScale, maxScale;
+
+    /**
+     * Total time spent in every stage, in nanoseconds.
+     */
+    private final Map<PreprocessingStage, LongAdder> totalNanos = new EnumMap<>(PreprocessingStage.class);
+    /**
+     * How many times every stage has run.
+     */
+    private final Map<PreprocessingStage, LongAdder> runs = new EnumMap<>(PreprocessingStage.class);
+
+    // Dependencies
+    private final ImageUtils imageUtils;
+
+    @Autowired
+    public ImagePreprocessor(
+            @Value("${ocr.preprocessing.camera:GRAYSCALE,DESKEW,CROP,NORMALIZE_RESOLUTION,DOWNSCALE}") String cameraStages,
+            @Value("${ocr.preprocessing.image-file:GRAYSCALE,DESKEW,NORMALIZE_RESOLUTION}") String imageFileStages,
+            @Value("${ocr.preprocessing.document-page:GRAYSCALE,NORMALIZE_RESOLUTION}") String documentPageStages,
+            @Value("${ocr.preprocessing.max-dimension:3000}") int maxDimension,
+            @Value("${ocr.preprocessing.target-x-height:20}") int targetXHeight,
+            @Value("${ocr.preprocessing.min-scale:0.25}") double minScale,
+            @Value("${ocr.preprocessing.max-scale:3.0}") double maxScale,
+            ImageUtils imageUtils
+    ) {
+        this.stages.put(InputSource.CAMERA, parseStages(cameraStages));
+        this.stages.put(InputSource.IMAGE_FILE, parseStages(imageFileStages));
+        this.stages.put(InputSource.DOCUMENT_PAGE, parseStages(documentPageStages));
+        this.maxDimension = maxDimension;
+        this.targetXHeight = targetXHeight;
+        this.minScale = minScale;
+        this.maxScale = maxScale;
+        this.imageUtils = imageUtils;
+        for (PreprocessingStage stage : PreprocessingStage.values()) {
+            totalNanos.put(stage, new LongAdder());
+            runs.put(stage, new LongAdder());
+        }
+    }
+
+    /**
+     * Gets the stages used for an input source.
+     * @param source The input source.
+     * @return The stages, in the order they are run.
+     */
+    public List<PreprocessingStage> getStages(InputSource source) {
+        return stages.get(source);
+    }
+
+    /**
+     * Describes everything that changes the output for an input source: the
+     * stages and the parameters they use. Cached results made with another
+     * description are not reused.
+     * @param source The input source.
+     * @return The description.
+     */
+    public String getVersion(InputSource source) {
+        return stages.get(source) + "|max-dimension=" + maxDimension + "|x-height=" + targetXHeight
+                + "|scale=" + minScale + "-" + maxScale;
+    }
+
+    /**
+     * Runs an image through the stages of its input source.
+     * @param image The image. It is not modified.
+     * @param source Where the image comes from.
+     * @return The processed image and the time every stage took.
+     */
+    public Result process(Mat image, InputSource source) {
+        Result result = process(image, stages.get(source));
+        if (log.isDebugEnabled()) {
+            log.debug("Preprocessing {}: {}", source, result.timings().stream()
+                    .map(x -> String.format("%s %.1f ms", x.stage(), x.nanos() / 1e6))
+                    .collect(Collectors.joining(", ")));
+        }
+        return result;
+    }
+
+    /**
+     * Runs an image through the given stages.
+     * @param image The image. It is not modified.
+     * @param stageList The stages to run, in order.
+     * @return The processed image and the time every stage took.
+     */
+    public Result process(Mat image, List<PreprocessingStage> stageList) {
+        return process(image, stageList, targetXHeight);
+    }
+
+    /**
+     * Runs an image through the given stages, normalising its resolution to
+     * a given x-height instead of the configured one. Used when tuning.
+     * @param image The image. It is not modified.
+     * @param stageList The stages to run, in order.
+     * @param xHeight The x-height the
+     *                {@link PreprocessingStage#NORMALIZE_RESOLUTION} stage
+     *                scales text to.
+     * @return The processed image and the time every stage took.
+     */
+    public Result process(Mat image, List<PreprocessingStage> stageList, int xHeight) {
+        List<StageTiming> timings = new ArrayList<>(stageList.size());
+        Mat current = image;
+        for (PreprocessingStage stage : stageList) {
+            long start = System.nanoTime();
+            current = apply(stage, current, xHeight);
+            long nanos = System.nanoTime() - start;
+            timings.add(new StageTiming(stage, nanos));
+            totalNanos.get(stage).add(nanos);
+            runs.get(stage).increment();
+        }
+        return new Result(current, timings);
+    }
+
+    /**
+     * Gets the average time every stage has taken so far.
+     * @return Average time in milliseconds for every stage that has run at
+     * least once.
+     */
+    public Map<PreprocessingStage, Double> getAverageMillis() {
+        Map<PreprocessingStage, Double> averages = new EnumMap<>(PreprocessingStage.class);
+        for (PreprocessingStage stage : PreprocessingStage.values()) {
+            long count = runs.get(stage).sum();
+            if (count > 0) averages.put(stage, totalNanos.get(stage).sum() / 1e6 / count);
+        }
+        return averages;
+    }
+
+    /**
+     * Runs a single stage.
+     * @param stage The stage.
+     * @param image The image. It is not modified.
+     * @param xHeight The x-height text is normalised to.
+     * @return The processed image. Can be the same object as the input if the
+     * stage had nothing to do.
+     */
+    private Mat apply(PreprocessingStage stage, Mat image, int xHeight) {
+        return switch (stage) {
+            case GRAYSCALE -> toGray(image);
+            case DESKEW -> deskew(toGray(image));
+            case ADAPTIVE_THRESHOLD -> {
+                Mat binary = new Mat();
+                Imgproc.adaptiveThreshold(toGray(image), binary, 255,
+                        Imgproc.ADAPTIVE_THRESH_GAUSSIAN_C, Imgproc.THRESH_BINARY, 31, 15);
+                yield binary;
+            }
+            case DENOISE -> {
+                Mat denoised = new Mat();
+                Imgproc.medianBlur(image, denoised, 3);
+                yield denoised;
+            }
+            case CROP -> crop(toGray(image));
+            case NORMALIZE_RESOLUTION -> normalizeResolution(toGray(image), xHeight);
+            case DOWNSCALE -> downscale(image);
+        };
+    }
+
+    private Mat toGray(Mat image) {
+        if (image.channels() == 1) return image;
+        Mat gray = new Mat();
+        Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
+        return gray;
+    }
+
+    /**
+     * Rotates a grayscale image so that its lines of text are horizontal.
+     * @param gray Single channel grayscale material.
+     * @return The rotated image.
+     */
+    private Mat deskew(Mat gray) {
+        double angle = new ImageDeskew(imageUtils.openCVMatToBufferedImage(gray)).getSkewAngle();
+        if (Math.abs(angle) < MINIMUM_DESKEW_ANGLE) return gray;
+        Point center = new Point(gray.width() / 2.0, gray.height() / 2.0);
+        Mat rotation = Imgproc.getRotationMatrix2D(center, angle, 1.0);
+        Mat rotated = new Mat();
+        Imgproc.warpAffine(gray, rotated, rotation, gray.size(), Imgproc.INTER_LINEAR, Core.BORDER_REPLICATE);
+        return rotated;
+    }
+
+    /**
+     * Cuts away the empty margins of a grayscale image with dark text on a
+     * light background.
+     * @param gray Single channel grayscale material.
+     * @return The content of the image with a small margin around it.
+     */
+    private Mat crop(Mat gray) {
+        Mat ink = new Mat();
+        Imgproc.threshold(gray, ink, 0, 255, Imgproc.THRESH_BINARY_INV | Imgproc.THRESH_OTSU);
+        Mat points = new Mat();
+        Core.findNonZero(ink, points);
+        if (points.empty()) return gray;
+        Rect content = Imgproc.boundingRect(points);
+        int left = Math.max(0, content.x - CROP_MARGIN);
+        int top = Math.max(0, content.y - CROP_MARGIN);
+        int right = Math.min(gray.width(), content.x + content.width + CROP_MARGIN);
+        int bottom = Math.min(gray.height(), content.y + content.height + CROP_MARGIN);
+        return gray.submat(new Rect(left, top, right - left, bottom - top)).clone();
+    }
+
+    /**
+     * Scales a grayscale image so that its text has the target x-height.
+     * Shrinking uses area interpolation, which keeps thin strokes, and
+     * enlarging uses cubic interpolation, which keeps edges sharp.
+     * @param gray Single channel grayscale material.
+     * @param target The x-height to scale to.
+     * @return The scaled image, or the same image if its x-height can't be
+     * estimated or is already close to the target.
+     */
+    private Mat normalizeResolution(Mat gray, int target) {
+        double xHeight = imageUtils.estimateXHeight(gray);
+        if (xHeight <= 0) return gray;
+        double scale = Math.max(minScale, Math.min(maxScale, target / xHeight));
+        if (Math.abs(scale - 1.0) < X_HEIGHT_TOLERANCE) return gray;
+        Mat scaled = new Mat();
+        int interpolation = scale < 1.0 ? Imgproc.INTER_AREA : Imgproc.INTER_CUBIC;
+        Imgproc.resize(gray, scaled, new Size(), scale, scale, interpolation);
+        return scaled;
+    }
+
+    /**
+     * Shrinks an image so that neither side is longer than
+     * {@link ImagePreprocessor#maxDimension}.
+     * @param image The image.
+     * @return The shrunk image, or the same image if it's small enough.
+     */
+    private Mat downscale(Mat image) {
+        int longestSide = Math.max(image.width(), image.height());
+        if (longestSide <= maxDimension) return image;
+        double scale = (double)maxDimension / longestSide;
+        Mat scaled = new Mat();
+        Imgproc.resize(image, scaled, new Size(), scale, scale, Imgproc.INTER_AREA);
+        return scaled;
+    }
+
+    /**
+     * Reads a comma separated list of stage names.
+     * @param value The list, for example "GRAYSCALE,DESKEW".
+     * @return The stages.
+     */
+    public List<PreprocessingStage> parseStages(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(x -> !x.isEmpty())
+                .map(x -> PreprocessingStage.valueOf(x.toUpperCase(Locale.ROOT)))
+                .toList();
+    }
+
+    /**
+     * The result of preprocessing an image.
+     * @param image The processed image.
+     * @param timings How long every stage took, in the order they ran.
+     */
+    public record Result(Mat image, List<StageTiming> timings) {
+    }
+}
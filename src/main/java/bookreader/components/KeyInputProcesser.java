@@ -4,6 +4,7 @@ import javafx.event.EventHandler;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 
@@ -12,6 +13,7 @@ import org.springframework.stereotype.Component;
  * and what to do with it.
  */
 @Component
+@Profile("!batch & !tune")
 public class KeyInputProcesser implements EventHandler<KeyEvent> {
 
     // Dependencies
@@ -1,12 +1,15 @@
 package bookreader.components;
 
+import bookreader.models.TextStyle;
 import javafx.scene.paint.Paint;
 import javafx.scene.text.Font;
 import javafx.util.Pair;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Component
 public class LowVisionSettings {
@@ -80,6 +83,16 @@ public class LowVisionSettings {
      */
     private int spotlightColorCombinationChoice = 9;
 
+    /**
+     * Fonts that were already created, by size. Fonts and styles are
+     * immutable, so the same ones are handed out every time.
+     */
+    private final Map<Integer, Font> fonts = new HashMap<>();
+    /**
+     * Styles that were already created, by the combination of choices.
+     */
+    private final Map<Integer, TextStyle> textStyles = new HashMap<>();
+
     @Autowired
     public LowVisionSettings() {
 
@@ -163,19 +176,40 @@ public class LowVisionSettings {
     }
 
     /**
-     * Creates a new Font object that contains all font information.
+     * Gets the Font object that contains all font information.
      * @return Font object.
      */
     public Font getWordFont() {
-        return new Font("System", getWordFontSize());
+        return getFont(getWordFontSize());
     }
 
     /**
-     * Creates a new Font object that contains all the font information for
+     * Gets the Font object that contains all the font information for
      * the spacing characters.
      * @return Font object.
      */
     public Font getSpacingFont() {
-        return new Font("System", getSpacingFontSize());
+        return getFont(getSpacingFontSize());
+    }
+
+    private Font getFont(int size) {
+        return fonts.computeIfAbsent(size, x -> new Font("System", x));
+    }
+
+    /**
+     * Gets the fonts and colors of the current settings. The same object is
+     * returned for as long as the settings don't change.
+     * @return Style of the text.
+     */
+    public TextStyle getTextStyle() {
+        int key = ((fontSizeChoice * spacingOptions.length + spacingChoice) * backgroundFontColors.size()
+                + mainColorCombinationChoice) * backgroundFontColors.size() + spotlightColorCombinationChoice;
+        return textStyles.computeIfAbsent(key, x -> new TextStyle(
+                getWordFont(),
+                getSpacingFont(),
+                getCurrentColorsMain().getKey(),
+                getCurrentColorsMain().getValue(),
+                getCurrentColorsSpotlight().getKey(),
+                getCurrentColorsSpotlight().getValue()));
     }
 }
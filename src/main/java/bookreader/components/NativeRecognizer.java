@@ -0,0 +1,251 @@
+package bookreader.components;
+
+import bookreader.models.OCRSettings;
+import bookreader.models.RecognizedWord;
+import com.sun.jna.Pointer;
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.TessAPI;
+import net.sourceforge.tess4j.TesseractException;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.awt.Rectangle;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recognises images through the native Tesseract API instead of
+ * {@link net.sourceforge.tess4j.Tesseract#doOCR}, which only returns once the
+ * whole image is done. The layout of the image is analysed first and every
+ * text line is then recognised on its own, so the words of the first lines
+ * are available while the rest of the image is still being recognised.
+ * Images are recognised on handles from the {@link NativeTesseractPool}, so
+ * the models are not loaded again for every image.
+ */
+@Component
+public class NativeRecognizer {
+
+    // Dependencies
+    private final TessAPI tessAPI;
+    private final NativeTesseractPool nativeTesseractPool;
+
+    @Autowired
+    public NativeRecognizer(
+            TessAPI tessAPI,
+            NativeTesseractPool nativeTesseractPool
+    ) {
+        this.tessAPI = tessAPI;
+        this.nativeTesseractPool = nativeTesseractPool;
+    }
+
+    /**
+     * Recognises a grayscale image line by line.
+     * @param gray Single channel grayscale material.
+     * @param settings Settings to recognise the image with. The page
+     *                 segmentation mode is used for the layout analysis.
+     * @param listener Receives the words of every line as soon as the line is
+     *                 recognised, in reading order.
+     * @return All recognised words.
+     * @throws TesseractException If the engine can't be initialised.
+     */
+    public List<RecognizedWord> recognise(Mat gray, OCRSettings settings, LineListener listener)
+            throws TesseractException {
+        return nativeTesseractPool.execute(settings, engine -> {
+            ITessAPI.TessBaseAPI handle = engine.getHandle();
+            engine.setImage(gray);
+
+            List<RecognizedWord> words = new ArrayList<>();
+            List<Rectangle> lines = findRegions(handle, ITessAPI.TessPageIteratorLevel.RIL_TEXTLINE);
+            tessAPI.TessBaseAPISetPageSegMode(handle, ITessAPI.TessPageSegMode.PSM_SINGLE_LINE);
+            for (int i = 0; i < lines.size(); i++) {
+                Rectangle line = lines.get(i);
+                tessAPI.TessBaseAPISetRectangle(handle, line.x, line.y, line.width, line.height);
+                if (tessAPI.TessBaseAPIRecognize(handle, null) != 0) continue;
+                List<RecognizedWord> lineWords = readWords(handle, i);
+                if (lineWords.isEmpty()) continue;
+                words.addAll(lineWords);
+                listener.lineRecognised(i, lineWords);
+            }
+            return words;
+        });
+    }
+
+    /**
+     * Recognises a grayscale image at once and reads back every word with its
+     * confidence and position.
+     * @param gray Single channel grayscale material.
+     * @param settings Settings to recognise the image with.
+     * @return The recognised words in reading order. Their line indices
+     * count the text lines of the image from 0.
+     * @throws TesseractException If the engine can't be initialised or the
+     * image can't be recognised.
+     */
+    public List<RecognizedWord> recogniseWords(Mat gray, OCRSettings settings) throws TesseractException {
+        return nativeTesseractPool.execute(settings, engine -> {
+            ITessAPI.TessBaseAPI handle = engine.getHandle();
+            engine.setImage(gray);
+            if (tessAPI.TessBaseAPIRecognize(handle, null) != 0) {
+                throw new TesseractException("Could not recognise the image");
+            }
+            return readWords(handle, -1);
+        });
+    }
+
+    /**
+     * Recognises the whole text of a grayscale image at once. Used for
+     * continuous scanning, where the handle's models stay loaded between
+     * frames.
+     * @param gray Single channel grayscale material.
+     * @param settings Settings to recognise the image with.
+     * @return The recognised text.
+     * @throws TesseractException If the engine can't be initialised or the
+     * image can't be recognised.
+     */
+    public String recogniseText(Mat gray, OCRSettings settings) throws TesseractException {
+        return nativeTesseractPool.execute(settings, engine -> {
+            engine.setImage(gray);
+            Pointer textPointer = tessAPI.TessBaseAPIGetUTF8Text(engine.getHandle());
+            if (textPointer == null) throw new TesseractException("Could not recognise the image");
+            String text = textPointer.getString(0, "UTF-8");
+            tessAPI.TessDeleteText(textPointer);
+            return text;
+        });
+    }
+
+    /**
+     * Recognises the text of a region of a grayscale image. Only the region
+     * is given to Tesseract, so regions of the same image can be recognised
+     * in parallel on different handles.
+     * @param gray Single channel grayscale material.
+     * @param region The region. Parts outside the image are ignored.
+     * @param settings Settings to recognise the region with.
+     * @return The recognised text, or an empty string if the region is
+     * completely outside the image.
+     * @throws TesseractException If the engine can't be initialised or the
+     * region can't be recognised.
+     */
+    public String recogniseText(Mat gray, Rectangle region, OCRSettings settings) throws TesseractException {
+        Rectangle clipped = region.intersection(new Rectangle(0, 0, gray.width(), gray.height()));
+        if (clipped.isEmpty()) return "";
+        return recogniseText(gray.submat(new Rect(clipped.x, clipped.y, clipped.width, clipped.height)), settings);
+    }
+
+    /**
+     * Runs layout analysis on a grayscale image and finds its text blocks,
+     * such as paragraphs and columns. Image, line and noise blocks are left
+     * out.
+     * @param gray Single channel grayscale material.
+     * @param settings Settings to analyse the image with.
+     * @return Bounding boxes of the text blocks, in the reading order found
+     * by Tesseract.
+     * @throws TesseractException If the engine can't be initialised.
+     */
+    public List<Rectangle> findTextBlocks(Mat gray, OCRSettings settings) throws TesseractException {
+        return nativeTesseractPool.execute(settings, engine -> {
+            engine.setImage(gray);
+            return findRegions(engine.getHandle(), ITessAPI.TessPageIteratorLevel.RIL_BLOCK);
+        });
+    }
+
+    /**
+     * Runs layout analysis on the image set in the handle.
+     * @param handle Handle with an image.
+     * @param level Level of the regions to find, from
+     *              {@link ITessAPI.TessPageIteratorLevel}.
+     * @return Bounding boxes of all regions of that level that contain text,
+     * in reading order.
+     */
+    private List<Rectangle> findRegions(ITessAPI.TessBaseAPI handle, int level) {
+        List<Rectangle> regions = new ArrayList<>();
+        ITessAPI.TessPageIterator iterator = tessAPI.TessBaseAPIAnalyseLayout(handle);
+        if (iterator == null) return regions;
+        try {
+            do {
+                if (!isTextBlock(tessAPI.TessPageIteratorBlockType(iterator))) continue;
+                Rectangle box = boundingBox(iterator, level);
+                if (box != null) regions.add(box);
+            } while (tessAPI.TessPageIteratorNext(iterator, level) != 0);
+        } finally {
+            tessAPI.TessPageIteratorDelete(iterator);
+        }
+        return regions;
+    }
+
+    /**
+     * Checks whether a block type contains text.
+     * @param blockType Type from {@link ITessAPI.TessPolyBlockType}.
+     * @return False for images, separator lines and noise, true otherwise.
+     */
+    private boolean isTextBlock(int blockType) {
+        return switch (blockType) {
+            case ITessAPI.TessPolyBlockType.PT_FLOWING_IMAGE,
+                    ITessAPI.TessPolyBlockType.PT_HEADING_IMAGE,
+                    ITessAPI.TessPolyBlockType.PT_PULLOUT_IMAGE,
+                    ITessAPI.TessPolyBlockType.PT_HORZ_LINE,
+                    ITessAPI.TessPolyBlockType.PT_VERT_LINE,
+                    ITessAPI.TessPolyBlockType.PT_NOISE -> false;
+            default -> true;
+        };
+    }
+
+    /**
+     * Reads all words from the last recognition of a handle.
+     * @param handle Handle that has recognised an image.
+     * @param line Index of the line the words are on, or -1 to number the
+     *             lines of the recognised region from 0.
+     * @return The recognised words.
+     */
+    private List<RecognizedWord> readWords(ITessAPI.TessBaseAPI handle, int line) {
+        boolean countLines = line < 0;
+        List<RecognizedWord> words = new ArrayList<>();
+        ITessAPI.TessResultIterator iterator = tessAPI.TessBaseAPIGetIterator(handle);
+        if (iterator == null) return words;
+        int level = ITessAPI.TessPageIteratorLevel.RIL_WORD;
+        try {
+            do {
+                ITessAPI.TessPageIterator pageIterator = tessAPI.TessResultIteratorGetPageIterator(iterator);
+                if (countLines && tessAPI.TessPageIteratorIsAtBeginningOf(pageIterator,
+                        ITessAPI.TessPageIteratorLevel.RIL_TEXTLINE) != 0) {
+                    line++;
+                }
+                Pointer textPointer = tessAPI.TessResultIteratorGetUTF8Text(iterator, level);
+                if (textPointer == null) continue;
+                String text = textPointer.getString(0, "UTF-8").strip();
+                tessAPI.TessDeleteText(textPointer);
+                Rectangle box = boundingBox(pageIterator, level);
+                if (text.isEmpty() || box == null) continue;
+                float confidence = tessAPI.TessResultIteratorConfidence(iterator, level);
+                words.add(new RecognizedWord(text, confidence, box.x, box.y, box.width, box.height, line));
+            } while (tessAPI.TessResultIteratorNext(iterator, level) != 0);
+        } finally {
+            tessAPI.TessResultIteratorDelete(iterator);
+        }
+        return words;
+    }
+
+    /**
+     * Gets the bounding box of the element a page iterator is at.
+     * @param iterator The iterator.
+     * @param level Level of the element, from
+     *              {@link ITessAPI.TessPageIteratorLevel}.
+     * @return The bounding box, or null if there is no element at that level.
+     */
+    private Rectangle boundingBox(ITessAPI.TessPageIterator iterator, int level) {
+        IntBuffer left = IntBuffer.allocate(1);
+        IntBuffer top = IntBuffer.allocate(1);
+        IntBuffer right = IntBuffer.allocate(1);
+        IntBuffer bottom = IntBuffer.allocate(1);
+        if (tessAPI.TessPageIteratorBoundingBox(iterator, level, left, top, right, bottom) == 0) return null;
+        return new Rectangle(left.get(0), top.get(0), right.get(0) - left.get(0), bottom.get(0) - top.get(0));
+    }
+
+    /**
+     * Listener that receives the words of an image line by line.
+     */
+    public interface LineListener {
+        void lineRecognised(int lineIndex, List<RecognizedWord> words);
+    }
+}
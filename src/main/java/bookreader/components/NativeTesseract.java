@@ -0,0 +1,107 @@
+package bookreader.components;
+
+import bookreader.models.OCRSettings;
+import com.sun.jna.Pointer;
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.TessAPI;
+import net.sourceforge.tess4j.TesseractException;
+import org.opencv.core.Mat;
+
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+
+/**
+ * A long-lived native Tesseract handle. Loading the traineddata files is the
+ * most expensive part of initialising Tesseract, so the handle keeps its
+ * models loaded between images and is only initialised again when the
+ * language or engine mode changes. Handles are not thread-safe and are
+ * handed out by the {@link NativeTesseractPool}.
+ */
+public class NativeTesseract {
+
+    private final TessAPI tessAPI;
+    private final String datapath;
+    private final ITessAPI.TessBaseAPI handle;
+
+    /**
+     * Settings the handle is currently initialised with, or null if it
+     * hasn't been initialised yet.
+     */
+    private OCRSettings settings = null;
+
+    NativeTesseract(TessAPI tessAPI, String datapath) {
+        this.tessAPI = tessAPI;
+        this.datapath = datapath;
+        this.handle = tessAPI.TessBaseAPICreate();
+    }
+
+    /**
+     * Gets the native handle, for use with the {@link TessAPI} methods.
+     * @return The handle.
+     */
+    public ITessAPI.TessBaseAPI getHandle() {
+        return this.handle;
+    }
+
+    /**
+     * Checks whether the handle's loaded models can be used for the given
+     * settings without initialising it again.
+     * @param settings The settings.
+     * @return True if the language and engine mode match, false otherwise.
+     */
+    public boolean isInitialisedFor(OCRSettings settings) {
+        return this.settings != null
+                && this.settings.language().equals(settings.language())
+                && this.settings.ocrEngineMode() == settings.ocrEngineMode();
+    }
+
+    /**
+     * Prepares the handle for recognition with the given settings. The
+     * models are only loaded again if the language or engine mode changed.
+     * @param settings The settings.
+     * @throws TesseractException If Tesseract can't be initialised.
+     */
+    public void configure(OCRSettings settings) throws TesseractException {
+        if (!isInitialisedFor(settings)) {
+            if (this.settings != null) tessAPI.TessBaseAPIEnd(handle);
+            this.settings = null;
+            if (tessAPI.TessBaseAPIInit2(handle, datapath, settings.language(), settings.ocrEngineMode()) != 0) {
+                throw new TesseractException("Could not initialise Tesseract for " + settings.language());
+            }
+            this.settings = settings;
+        }
+        // the native API defaults to a single block, same as Tesseract objects
+        tessAPI.TessBaseAPISetPageSegMode(handle, settings.pageSegMode() == OCRSettings.DEFAULT_PAGE_SEG_MODE
+                ? ITessAPI.TessPageSegMode.PSM_SINGLE_BLOCK : settings.pageSegMode());
+    }
+
+    /**
+     * Gives a grayscale image to the handle. The pixels are passed straight
+     * from the material's memory, without copying them on the Java side.
+     * @param gray Single channel grayscale material.
+     */
+    public void setImage(Mat gray) {
+        Mat continuous = gray.isContinuous() ? gray : gray.clone();
+        ByteBuffer pixels = new Pointer(continuous.dataAddr())
+                .getByteBuffer(0, (long)continuous.width() * continuous.height());
+        tessAPI.TessBaseAPISetImage(handle, pixels, continuous.width(), continuous.height(), 1, continuous.width());
+        // the material must not be freed before Tesseract has copied its pixels
+        Reference.reachabilityFence(continuous);
+    }
+
+    /**
+     * Frees the results of the last recognition, keeping the models loaded.
+     */
+    public void clear() {
+        tessAPI.TessBaseAPIClear(handle);
+    }
+
+    /**
+     * Frees the handle. It can't be used afterwards.
+     */
+    public void close() {
+        if (this.settings != null) tessAPI.TessBaseAPIEnd(handle);
+        tessAPI.TessBaseAPIDelete(handle);
+        this.settings = null;
+    }
+}
@@ -0,0 +1,175 @@
+package bookreader.components;
+
+import bookreader.models.OCRSettings;
+import net.sourceforge.tess4j.TessAPI;
+import net.sourceforge.tess4j.TesseractException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A bounded pool of {@link NativeTesseract} handles. Handles are kept
+ * initialised between uses, and a handle that already has the requested
+ * language loaded is preferred, so most borrows don't load any models.
+ */
+@Component
+public class NativeTesseractPool {
+
+    private final TessAPI tessAPI;
+    private final String datapath;
+
+    /**
+     * Maximum amount of handles.
+     */
+    private final int size;
+    /**
+     * How many handles have been created.
+     */
+    private int created = 0;
+    /**
+     * Handles that are not currently borrowed.
+     */
+    private final List<NativeTesseract> idle = new ArrayList<>();
+
+    @Autowired
+    public NativeTesseractPool(
+            TessAPI tessAPI,
+            @Value("${ocr.datapath:./tessdata}") String datapath,
+            @Value("${ocr.pool.size:0}") int size
+    ) {
+        this.tessAPI = tessAPI;
+        this.datapath = datapath;
+        this.size = size > 0 ? size : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Gets the maximum amount of handles that can be used at the same time.
+     * @return The size of the pool.
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Takes a handle out of the pool, preferring one that is already
+     * initialised for the given settings. If all handles are in use, this
+     * waits until one is returned. The handle is not configured, see
+     * {@link NativeTesseract#configure(OCRSettings)}.
+     * @param settings Settings the handle will be used with.
+     * @return A handle that only the caller is using.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public synchronized NativeTesseract borrow(OCRSettings settings) throws InterruptedException {
+        while (true) {
+            for (int i = 0; i < idle.size(); i++) {
+                if (idle.get(i).isInitialisedFor(settings)) return idle.remove(i);
+            }
+            if (created < size) {
+                created++;
+                return new NativeTesseract(tessAPI, datapath);
+            }
+            // the handle will have to load other models
+            if (!idle.isEmpty()) return idle.remove(0);
+            wait();
+        }
+    }
+
+    /**
+     * Returns a borrowed handle to the pool.
+     * @param engine The handle.
+     */
+    public synchronized void release(NativeTesseract engine) {
+        engine.clear();
+        idle.add(engine);
+        notifyAll();
+    }
+
+    /**
+     * Borrows a handle, configures it, runs a task with it and returns the
+     * handle to the pool, even if the task fails.
+     * @param settings Settings to configure the handle with.
+     * @param task Task to run.
+     * @param <T> Type of the result.
+     * @return The result of the task.
+     * @throws TesseractException If the task fails, the handle can't be
+     * configured or the thread is interrupted while waiting for a handle.
+     */
+    public <T> T execute(OCRSettings settings, HandleTask<T> task) throws TesseractException {
+        NativeTesseract engine;
+        try {
+            engine = borrow(settings);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TesseractException(e);
+        }
+        try {
+            engine.configure(settings);
+            return task.run(engine);
+        } finally {
+            release(engine);
+        }
+    }
+
+    /**
+     * Initialises handles ahead of time, so that the first requests don't
+     * load any models. All handles are borrowed before any of them is
+     * initialised, so every entry gets a handle of its own, and they are
+     * initialised in parallel.
+     * @param settings Settings to initialise a handle with, one entry per
+     *                 handle. The same settings can be given several times
+     *                 for requests that use them in parallel. Entries over
+     *                 the size of the pool are ignored.
+     * @param executor Executor on which the handles are initialised.
+     * @throws TesseractException If a handle can't be initialised or the
+     * thread is interrupted while waiting for a handle.
+     */
+    public void initialise(List<OCRSettings> settings, ExecutorService executor) throws TesseractException {
+        List<NativeTesseract> engines = new ArrayList<>();
+        try {
+            for (OCRSettings engineSettings : settings.subList(0, Math.min(size, settings.size()))) {
+                engines.add(borrow(engineSettings));
+            }
+            List<Future<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < engines.size(); i++) {
+                NativeTesseract engine = engines.get(i);
+                OCRSettings engineSettings = settings.get(i);
+                tasks.add(executor.submit(() -> {
+                    engine.configure(engineSettings);
+                    return null;
+                }));
+            }
+            for (Future<Void> task : tasks) task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TesseractException(e);
+        } catch (ExecutionException e) {
+            throw new TesseractException(e.getCause());
+        } finally {
+            engines.forEach(this::release);
+        }
+    }
+
+    /**
+     * Frees all idle handles when the application closes.
+     */
+    @PreDestroy
+    public synchronized void close() {
+        idle.forEach(NativeTesseract::close);
+        idle.clear();
+    }
+
+    /**
+     * Work to do with a borrowed handle.
+     * @param <T> Type of the result.
+     */
+    public interface HandleTask<T> {
+        T run(NativeTesseract engine) throws TesseractException;
+    }
+}
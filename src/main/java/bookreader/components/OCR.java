@@ -1,8 +1,14 @@
 package bookreader.components;
 
+import bookreader.models.InputSource;
+import bookreader.models.OCRSettings;
+import bookreader.models.PreprocessingStage;
+import bookreader.models.RecognitionResult;
+import bookreader.models.RecognizedWord;
 import bookreader.utils.ImageUtils;
+import bookreader.utils.SentenceIndex;
 import bookreader.utils.TextUtils;
-import com.recognition.software.jdeskew.ImageDeskew;
+import bookreader.utils.TokenizedText;
 import net.sourceforge.tess4j.*;
 import net.sourceforge.tess4j.util.LoadLibs;
 import org.opencv.core.Mat;
@@ -10,120 +16,373 @@ import org.opencv.core.Size;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.ApplicationArguments;
-import org.springframework.boot.ApplicationRunner;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import javax.imageio.ImageIO;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
 import java.io.File;
 import java.io.IOException;
 import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
 
 @Component
 public class OCR {
 
     /**
-     * Tesseract object used for OCR.
+     * Settings used for images, such as camera pictures.
      */
-    private final ITesseract tesseract;
+    private final OCRSettings imageSettings;
+    /**
+     * Settings used for documents in Bulgarian, or when the language of a
+     * document can't be determined.
+     */
+    private final OCRSettings documentSettings;
+    /**
+     * Settings used for documents in English.
+     */
+    private final OCRSettings englishSettings;
+
+    /**
+     * Settings used for the quick drafts of camera pictures.
+     */
+    private final OCRSettings draftSettings;
+    /**
+     * Longest side, in pixels, that pictures are shrunk to for drafts.
+     */
+    private final int draftMaxDimension;
+
+    /**
+     * Part of the page height that is read to detect the language of a page.
+     */
+    private static final double LANGUAGE_SAMPLE_HEIGHT = 0.15;
+    /**
+     * Minimum amount of characters the language sample must have to be
+     * trusted.
+     */
+    private static final int LANGUAGE_SAMPLE_MIN_LENGTH = 20;
+
+    /**
+     * Pool of native Tesseract handles used for OCR. Every call borrows its
+     * own handle, so images and files can be processed concurrently.
+     */
+    private final NativeTesseractPool nativeTesseractPool;
     private final TessAPI tessAPI;
 
+    /**
+     * Executor on which the pages of documents and the blocks of images are
+     * recognised.
+     */
+    private final ForkJoinPool pageExecutor;
+
+    /**
+     * Whether images are split into text blocks that are recognised in
+     * parallel.
+     */
+    private final boolean parallelBlocks;
+
+    /**
+     * Completed once the engines are warmed up.
+     */
+    private final CompletableFuture<Void> ready;
+
     // Dependencies
     private final TextUtils textUtils;
     private final ImageUtils imageUtils;
     private final TextFilterer textFilterer;
+    private final PageRasterizer pageRasterizer;
+    private final OCRCache ocrCache;
+    private final NativeRecognizer nativeRecognizer;
+    private final ImagePreprocessor imagePreprocessor;
+    private final SelectiveRerecogniser selectiveRerecogniser;
+    private final OpenCVLoader openCVLoader;
 
     @Autowired
     public OCR(
-            Tesseract tesseract,
+            NativeTesseractPool nativeTesseractPool,
             TextUtils textUtils,
             ImageUtils imageUtils,
             TextFilterer textFilterer,
-            TessAPI tessAPI
+            TessAPI tessAPI,
+            PageRasterizer pageRasterizer,
+            OCRCache ocrCache,
+            NativeRecognizer nativeRecognizer,
+            ImagePreprocessor imagePreprocessor,
+            SelectiveRerecogniser selectiveRerecogniser,
+            OpenCVLoader openCVLoader,
+            @Value("${ocr.layout.parallel-blocks:true}") boolean parallelBlocks,
+            @Value("${ocr.draft.engine-mode:0}") int draftEngineMode,
+            @Value("${ocr.draft.max-dimension:1200}") int draftMaxDimension,
+            @Value("${ocr.engine-mode:3}") int engineMode,
+            @Value("${ocr.page-seg-mode:-1}") int pageSegMode
     ) {
-        this.tesseract = tesseract;
-        this.tesseract.setLanguage("bul");
-        this.tesseract.setDatapath("./tessdata");
-        //this.tesseract.setOcrEngineMode(ITessAPI.TessOcrEngineMode.);
-        //this.tesseract.setPageSegMode(ITessAPI.TessPageSegMode.);
-
+        this.nativeTesseractPool = nativeTesseractPool;
         this.textUtils = textUtils;
         this.imageUtils = imageUtils;
         this.textFilterer = textFilterer;
         this.tessAPI = tessAPI;
+        this.pageRasterizer = pageRasterizer;
+        this.ocrCache = ocrCache;
+        this.nativeRecognizer = nativeRecognizer;
+        this.imagePreprocessor = imagePreprocessor;
+        this.selectiveRerecogniser = selectiveRerecogniser;
+        this.parallelBlocks = parallelBlocks;
+        // the engine and page segmentation modes can be chosen by the OCRTuner
+        this.imageSettings = new OCRSettings("bul", pageSegMode, engineMode);
+        this.documentSettings = imageSettings.withLanguage("bul+eng");
+        this.englishSettings = imageSettings.withLanguage("eng");
+        this.draftSettings = new OCRSettings(imageSettings.language(), OCRSettings.DEFAULT_PAGE_SEG_MODE, draftEngineMode);
+        this.draftMaxDimension = draftMaxDimension;
+        this.openCVLoader = openCVLoader;
+        this.pageExecutor = new ForkJoinPool(nativeTesseractPool.getSize());
+        this.ready = openCVLoader.getLoaded()
+                .thenRunAsync(this::warmUp, pageExecutor)
+                .exceptionally(e -> {
+                    e.printStackTrace();
+                    return null;
+                });
     }
 
-    public String processImage(BufferedImage image) {
+    /**
+     * Gets a future that completes once the models are loaded, so the first
+     * camera picture doesn't pay for loading them. It also completes if warming up
+     * failed, in which case the first image loads the models itself.
+     * @return The future.
+     */
+    public CompletableFuture<Void> getReady() {
+        return ready;
+    }
+
+    /**
+     * Loads the models into the handles of the pool before the first
+     * picture. A camera picture is first recognised as a draft and then in
+     * blocks, at most as many at the same time as there are handles, so one
+     * handle is loaded with the draft settings and, if blocks are recognised
+     * in parallel, all the others with the image settings. Handles left over
+     * are loaded for documents, which otherwise load their models with the
+     * first file.
+     */
+    private void warmUp() {
+        long start = System.nanoTime();
+        int size = nativeTesseractPool.getSize();
+        int imageHandles = parallelBlocks ? Math.max(1, size - 1) : 1;
+        List<OCRSettings> settings = new ArrayList<>();
+        settings.add(draftSettings);
+        settings.addAll(Collections.nCopies(imageHandles, imageSettings));
+        settings.add(documentSettings);
+        settings.add(englishSettings);
         try {
-            Mat img = imageUtils.bufferedImage2Mat(image);
-            return processImage(img);
-        } catch (IOException e) {
-            return "";
+            nativeTesseractPool.initialise(settings, pageExecutor);
+        } catch (TesseractException e) {
+            e.printStackTrace();
+            return;
         }
+        System.out.printf("OCR warmed up %d handles in %.1f s%n", Math.min(size, settings.size()),
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Processes a picture from the camera and extracts the text in it.
+     * @param image Picture to process.
+     * @return Text from the picture.
+     */
+    public String processImage(BufferedImage image) {
+        openCVLoader.awaitLoaded();
+        Mat img = imageUtils.bufferedImageToGrayMat(image);
+        return processImage(img, InputSource.CAMERA);
     }
 
+    /**
+     * Processes an image file and extracts the text in it.
+     * @param file Image file to process.
+     * @return Text from the image.
+     * @throws IOException If the file can't be read as an image.
+     */
     public String processImage(File file) throws IOException {
+        openCVLoader.awaitLoaded();
         Mat mat = Imgcodecs.imread(file.getAbsolutePath());
-        return processImage(mat);
+        if (mat.empty()) throw new IOException("Could not read " + file);
+        return processImage(mat, InputSource.IMAGE_FILE);
     }
+
     /**
-     * Processes a buffered image and extracts the text in it.
+     * Processes an image and extracts the text in it. The image is
+     * preprocessed with the stages configured for its source first. Results
+     * of image files and pages are cached, camera pictures are always
+     * recognised again.
      * @param img Image to process.
+     * @param source Where the image comes from.
      * @return Text from the image.
      */
-    public String processImage(Mat img) throws IOException {
-
-//        try {
-//            ImageIO.write(imageUtils.openCVMatToBufferedImage(img),
-//                    "jpg", new File("data/step0.jpg"));
-//        } catch (IOException e) {
-//            e.printStackTrace();
-//        }
+    public String processImage(Mat img, InputSource source) {
+        if (img.channels() > 1) {
+            Imgproc.cvtColor(img, img, Imgproc.COLOR_BGR2GRAY);
+        }
+        // no two camera pictures are exactly the same, so they are never cached
+        String cacheKey = source == InputSource.CAMERA ? null : imageCacheKey(img, source);
+        if (cacheKey != null) {
+            Optional<RecognitionResult> cached = ocrCache.get(cacheKey);
+            if (cached.isPresent()) return cached.get().getText();
+        }
 
-        Imgproc.cvtColor(img, img, Imgproc.COLOR_RGB2GRAY);
-        //Imgcodecs.imwrite("data/step1.jpg", img);
+        Mat preprocessed = toGray(imagePreprocessor.process(img, source).image());
+        try {
+            String result = recognise(preprocessed, source, imageSettings);
+            String filtered = textFilterer.filterTextFromImage(result);
+            if (cacheKey != null) ocrCache.put(cacheKey, new RecognitionResult(List.of(filtered), List.of()));
+            return filtered;
+        } catch (TesseractException e) {
+            e.printStackTrace();
+            return "Failed to process";
+        }
+    }
 
-        //Imgproc.dilate(img, img, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(1.5, 1.5)));
-        //Imgcodecs.imwrite("data/step2.jpg", img);
+    /**
+     * Recognises an image with other engine and preprocessing settings than
+     * the configured ones, on the same path images of its source normally
+     * take, including the language, the parallel blocks and the second pass
+     * over uncertain lines. Results aren't cached. Used by the
+     * {@link OCRTuner} to measure configurations.
+     * @param gray Single channel grayscale material.
+     * @param source Where the image comes from.
+     * @param engineMode Engine mode to recognise with.
+     * @param pageSegMode Page segmentation mode to recognise with. The
+     *                    language is chosen by the source, as usual.
+     * @param stages Preprocessing stages to run instead of the configured
+     *               ones.
+     * @param xHeight X-height the resolution is normalised to.
+     * @return Filtered text from the image.
+     * @throws TesseractException If the image can't be recognised.
+     */
+    public String processImageWith(Mat gray, InputSource source, int engineMode, int pageSegMode,
+                                   List<PreprocessingStage> stages, int xHeight) throws TesseractException {
+        Mat preprocessed = toGray(imagePreprocessor.process(gray, stages, xHeight).image());
+        OCRSettings settings = new OCRSettings(imageSettings.language(), pageSegMode, engineMode);
+        return textFilterer.filterTextFromImage(recognise(preprocessed, source, settings));
+    }
 
-        //Imgproc.medianBlur(img, img, 3);
-        //Imgcodecs.imwrite("data/step3.jpg", img);
+    /**
+     * Recognises a preprocessed image the way images of its source are
+     * recognised. Pages of documents are recognised in the language found
+     * on them, other images are split into blocks if
+     * {@link OCR#parallelBlocks} is on.
+     * @param gray The preprocessed image, as a single channel grayscale
+     *             material.
+     * @param source Where the image comes from.
+     * @param settings Settings for images. Documents use the same modes with
+     *                 their own languages.
+     * @return Unfiltered text from the image.
+     * @throws TesseractException If the image can't be recognised.
+     */
+    private String recognise(Mat gray, InputSource source, OCRSettings settings) throws TesseractException {
+        if (source == InputSource.DOCUMENT_PAGE) {
+            OCRSettings pageSettings = selectPageSettings(gray,
+                    settings.withLanguage(documentSettings.language()),
+                    settings.withLanguage(englishSettings.language()));
+            return selectiveRerecogniser.recognise(gray, pageSettings);
+        }
+        return parallelBlocks
+                ? recogniseBlocks(gray, settings)
+                : selectiveRerecogniser.recognise(gray, settings);
+    }
 
-        BufferedImage image = imageUtils.openCVMatToBufferedImage(img);
-//
-//        try {
-//            ImageIO.write(imageUtils.openCVMatToBufferedImage(img),
-//                    "jpg", new File("data/step3.jpg"));
-//        } catch (IOException e) {
-//            e.printStackTrace();
-//        }
+    /**
+     * Creates the cache key of an image recognised with
+     * {@link OCR#processImage(Mat, InputSource)}.
+     * @param gray The image, as a single channel grayscale material.
+     * @param source Where the image comes from.
+     * @return The key, or null if the cache is disabled.
+     */
+    private String imageCacheKey(Mat gray, InputSource source) {
+        String version = (parallelBlocks ? "image-blocks" : "image") + imagePreprocessor.getVersion(source);
+        return ocrCache.imageKey(gray, cacheVersion(version, imageSettings));
+    }
 
+    /**
+     * Processes a camera picture in two passes. A draft is recognised first
+     * from a downscaled copy with the fast draft settings and given to the
+     * listener line by line, so its start can be shown and read within a
+     * second. The picture is then recognised again with full quality.
+     * @param image Picture to process.
+     * @param listener Receives the lines of the draft and the refined text.
+     * @return The refined text of the picture.
+     */
+    public String processImageProgressively(BufferedImage image, ProgressListener listener) {
+        openCVLoader.awaitLoaded();
+        Mat img = imageUtils.bufferedImageToGrayMat(image);
         try {
-//            var rectangles = tesseract.getSegmentedRegions(image, 0);
-//            for (var r : rectangles) {
-//                System.out.println(r.toString());
-//            }
-
-            //tesseract.setPageSegMode(ITessAPI.TessPageSegMode.PSM_OSD_ONLY);
-            //String props = tesseract.doOCR(image);
-            //System.out.println("Info = " + props);
-            //tesseract.setPageSegMode(ITessAPI.TessPageSegMode.PSM_AUTO);
-
-            //ITessAPI.
+            long start = System.nanoTime();
+            recogniseDraft(img, listener);
+            System.out.printf("Draft recognised in %.2f s%n", (System.nanoTime() - start) / 1e9);
+        } catch (TesseractException e) {
+            e.printStackTrace();
+        }
+        String refined = processImage(img, InputSource.CAMERA);
+        listener.refinedRecognised(refined);
+        return refined;
+    }
 
-            String result = tesseract.doOCR(image);
+    /**
+     * Recognises a quick draft of a grayscale image. The image is shrunk so
+     * that its longest side is at most {@link OCR#draftMaxDimension} and
+     * recognised line by line with {@link OCR#draftSettings}, without
+     * preprocessing or re-recognition. Every line is filtered and given to
+     * the listener as soon as it is recognised. Words split with a hyphen at
+     * the end of a line are joined before the line is passed on.
+     * @param gray Single channel grayscale material.
+     * @param listener Receives the filtered text of every line, in order.
+     * @throws TesseractException If the image can't be recognised.
+     */
+    private void recogniseDraft(Mat gray, ProgressListener listener) throws TesseractException {
+        double scale = (double)draftMaxDimension / Math.max(gray.width(), gray.height());
+        Mat small = gray;
+        if (scale < 1.0) {
+            small = new Mat();
+            Imgproc.resize(gray, small, new Size(), scale, scale, Imgproc.INTER_AREA);
+        }
+        LineJoiner joiner = new LineJoiner(listener);
+        try {
+            nativeRecognizer.recognise(small, draftSettings, (lineIndex, words) -> joiner.add(words));
+        } finally {
+            joiner.finish();
+        }
+    }
 
-            System.out.println("Tesseract result:");
-            System.out.println(result);
+    /**
+     * Splits an image into text blocks, such as columns and paragraphs, and
+     * recognises the blocks in parallel, each on its own engine. The texts of
+     * the blocks are joined in reading order.
+     * @param gray Single channel grayscale material.
+     * @param settings Settings to recognise the image with.
+     * @return Text from the image.
+     * @throws TesseractException If a block can't be recognised.
+     */
+    private String recogniseBlocks(Mat gray, OCRSettings settings) throws TesseractException {
+        List<Rectangle> blocks = nativeRecognizer.findTextBlocks(gray, settings);
+        if (blocks.size() <= 1) return selectiveRerecogniser.recognise(gray, settings);
 
-            return textFilterer.filterTextFromImage(result);
-        } catch (TesseractException e) {
-            e.printStackTrace();
-            return "Failed to process";
+        List<ForkJoinTask<String>> tasks = blocks.stream()
+                .map(block -> pageExecutor.submit(() -> selectiveRerecogniser.recognise(gray, block, settings)))
+                .toList();
+        StringBuilder text = new StringBuilder();
+        try {
+            for (ForkJoinTask<String> task : tasks) {
+                text.append(task.join()).append('\n');
+            }
+        } catch (RuntimeException e) {
+            throw new TesseractException(e);
         }
+        return text.toString();
     }
 
     /**
@@ -132,29 +391,258 @@ public class OCR {
      * @return The text content of the file, or null if the file couldn't be
      * processed. There's also the possibility of an empty string when the
      * file was successfully processed.
+     * @see OCR#processFile(File, PageListener)
      */
     public String processFile(File file) {
-        try {
-            this.tesseract.setLanguage("bul+eng");
-            String result = tesseract.doOCR(file);
-            if (textUtils.getLanguage(result).equals("en")) {
-                tesseract.setLanguage("eng");
-                result = tesseract.doOCR(file);
+        return processFile(file, (pageIndex, text) -> {});
+    }
+
+    /**
+     * Processes a given file page by page. Pages are rendered one at a time
+     * and recognised in parallel. Every page is given to the listener as soon
+     * as it and all pages before it are done, so the start of the document is
+     * available long before the end of it is recognised.
+     * @param file File to process.
+     * @param listener Receives the text of every page, in order.
+     * @return The text content of the whole file, with pages separated by new
+     * lines, or null if the file couldn't be processed.
+     */
+    public String processFile(File file, PageListener listener) {
+        openCVLoader.awaitLoaded();
+        String version = "document" + imagePreprocessor.getVersion(InputSource.DOCUMENT_PAGE);
+        String cacheKey = ocrCache.fileKey(file, cacheVersion(version, documentSettings, englishSettings));
+        Optional<RecognitionResult> cached = ocrCache.get(cacheKey);
+        if (cached.isPresent()) {
+            List<String> pages = cached.get().pages();
+            for (int i = 0; i < pages.size(); i++) {
+                listener.pageProcessed(i, pages.get(i));
             }
-            return textFilterer.filterTextFromImage(result);
-        } catch (TesseractException e) {
+            return cached.get().getText();
+        }
+
+        try (PageRasterizer.Document document = pageRasterizer.open(file)) {
+            PageCollector collector = new PageCollector(document.getPageCount(), listener);
+            // limits how many rendered pages wait in memory for an engine
+            Semaphore pagesInFlight = new Semaphore(2 * nativeTesseractPool.getSize());
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < document.getPageCount(); i++) {
+                pagesInFlight.acquire();
+                BufferedImage page = document.renderPage(i);
+                int pageIndex = i;
+                tasks.add(pageExecutor.submit(() -> {
+                    try {
+                        collector.complete(pageIndex, processPage(page));
+                    } finally {
+                        pagesInFlight.release();
+                    }
+                }));
+            }
+            tasks.forEach(ForkJoinTask::join);
+            RecognitionResult result = new RecognitionResult(collector.getPages(), List.of());
+            if (collector.isComplete()) ocrCache.put(cacheKey, result);
+            return result.getText();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return null;
         }
     }
 
-    public void test() {
+    /**
+     * Recognises a single page of a document.
+     * @param page Image of the page.
+     * @return Filtered text of the page, or null if it couldn't be recognised.
+     */
+    private String processPage(BufferedImage page) {
+        Mat gray = imageUtils.bufferedImageToGrayMat(page);
+        if (!imagePreprocessor.getStages(InputSource.DOCUMENT_PAGE).isEmpty()) {
+            gray = toGray(imagePreprocessor.process(gray, InputSource.DOCUMENT_PAGE).image());
+        }
         try {
-            System.out.println("Start");
-            tesseract.createDocuments("BananaMassacre.png", "output", List.of(ITesseract.RenderedFormat.TEXT));
-
-            System.out.println("End");
+            return textFilterer.filterTextFromImage(recognise(gray, InputSource.DOCUMENT_PAGE, imageSettings));
         } catch (TesseractException e) {
             e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Makes sure a preprocessed image can be given to Tesseract, which
+     * expects single channel images.
+     * @param image The preprocessed image.
+     * @return The image, converted to grayscale if needed.
+     */
+    private Mat toGray(Mat image) {
+        if (image.channels() == 1) return image;
+        Mat gray = new Mat();
+        Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
+        return gray;
+    }
+
+    /**
+     * Describes everything that affects the result of OCR, so that cached
+     * results made with different settings are not reused.
+     * @param source What kind of input the result is for.
+     * @param settings All settings that can be used for the input.
+     * @return The description.
+     */
+    private String cacheVersion(String source, OCRSettings... settings) {
+        return source + "|" + Arrays.toString(settings)
+                + "|rerecognise<" + selectiveRerecogniser.getConfidenceThreshold()
+                + "|" + textFilterer.getVersion();
+    }
+
+    /**
+     * Chooses the settings to recognise a page with by reading a horizontal
+     * band from the middle of the page with both languages and checking
+     * which one the band is in. This way the whole page is recognised only
+     * once, with the right model.
+     * @param page Image of the page, as a single channel grayscale material.
+     * @param bothLanguages Settings for Bulgarian and English.
+     * @param english Settings for English only.
+     * @return The English settings if all sentences of the sample are in
+     * English, the settings for both languages otherwise or if the sample has
+     * too little text.
+     * @throws TesseractException If the sample can't be recognised.
+     */
+    private OCRSettings selectPageSettings(Mat page, OCRSettings bothLanguages, OCRSettings english)
+            throws TesseractException {
+        int sampleHeight = Math.max(1, (int)(page.height() * LANGUAGE_SAMPLE_HEIGHT));
+        Rectangle sample = new Rectangle(0, (page.height() - sampleHeight) / 2, page.width(), sampleHeight);
+        String sampleText = nativeRecognizer.recogniseText(page, sample, bothLanguages).strip();
+        if (sampleText.length() < LANGUAGE_SAMPLE_MIN_LENGTH || !textUtils.stringHasLetters(sampleText)) {
+            return bothLanguages;
+        }
+        TokenizedText words = textUtils.tokenize(sampleText);
+        String[] languages = textUtils.getSentenceLanguages(words, new SentenceIndex(words));
+        // a single sentence in Bulgarian is enough to need both models
+        return Arrays.asList(languages).contains("bg") ? bothLanguages : english;
+    }
+
+    /**
+     * Listener that receives the pages of a document as they're recognised.
+     */
+    public interface PageListener {
+        void pageProcessed(int pageIndex, String text);
+    }
+
+    /**
+     * Listener that receives the lines of the draft of an image as they're
+     * recognised, and then the refined text.
+     */
+    public interface ProgressListener {
+        void draftLineRecognised(int lineIndex, String text);
+        void refinedRecognised(String text);
+    }
+
+    /**
+     * Filters the recognised lines of a draft and passes them on to a
+     * listener. A line ending with a hyphen is held back until the next line
+     * arrives, so the split word can be joined.
+     */
+    private class LineJoiner {
+
+        private final ProgressListener listener;
+        /**
+         * Line that ended with a hyphen, without the hyphen, or null.
+         */
+        private String hyphenated = null;
+        /**
+         * How many lines have been passed to the listener.
+         */
+        private int linesProcessed = 0;
+
+        private LineJoiner(ProgressListener listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * Adds the next line.
+         * @param words Words of the line.
+         */
+        private void add(List<RecognizedWord> words) {
+            String line = words.stream().map(RecognizedWord::text).collect(Collectors.joining(" "));
+            if (hyphenated != null) {
+                line = hyphenated + line;
+                hyphenated = null;
+            }
+            if (line.endsWith("-")) {
+                hyphenated = line.substring(0, line.length() - 1);
+                return;
+            }
+            process(line);
+        }
+
+        /**
+         * Passes on the line held back, if there is one. Called after the last line.
+         */
+        private void finish() {
+            if (hyphenated != null) process(hyphenated + "-");
+            hyphenated = null;
+        }
+
+        private void process(String line) {
+            String filtered = textFilterer.filterTextFromImage(line);
+            if (filtered.isEmpty()) return;
+            listener.draftLineRecognised(linesProcessed++, filtered);
+        }
+    }
+
+    /**
+     * Collects the pages of a document as they finish, possibly out of
+     * order, and passes them on to a listener in order.
+     */
+    private static class PageCollector {
+
+        private final String[] pages;
+        private final PageListener listener;
+        /**
+         * Index of the first page that hasn't been passed to the listener.
+         */
+        private int nextPage = 0;
+        /**
+         * Whether all pages so far were recognised successfully.
+         */
+        private boolean complete = true;
+
+        private PageCollector(int pageCount, PageListener listener) {
+            this.pages = new String[pageCount];
+            this.listener = listener;
+        }
+
+        /**
+         * Records a finished page and passes on every page that is now ready.
+         * @param pageIndex Index of the page.
+         * @param text Text of the page, or null if it couldn't be recognised.
+         */
+        private synchronized void complete(int pageIndex, String text) {
+            if (text == null) {
+                complete = false;
+                text = "";
+            }
+            pages[pageIndex] = text;
+            while (nextPage < pages.length && pages[nextPage] != null) {
+                listener.pageProcessed(nextPage, pages[nextPage]);
+                nextPage++;
+            }
+        }
+
+        /**
+         * Gets the text of every page.
+         * @return List with the text of every page, in order.
+         */
+        private synchronized List<String> getPages() {
+            return Arrays.asList(pages.clone());
+        }
+
+        /**
+         * Checks whether every page was recognised successfully.
+         * @return True if no page failed, false otherwise.
+         */
+        private synchronized boolean isComplete() {
+            return complete;
         }
     }
 }
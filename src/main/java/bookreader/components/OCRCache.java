@@ -0,0 +1,325 @@
+package bookreader.components;
+
+import bookreader.models.RecognitionResult;
+import bookreader.models.RecognizedWord;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Persistent cache of OCR results, so that reopening a file or an image
+ * doesn't run Tesseract again.
+ *
+ * Files and images are identified by a digest of their contents, so only
+ * the exact same file or image finds an earlier result. Camera pictures are
+ * never cached, since two photos of the same page always differ in some
+ * pixels and could never be found again. Images are not matched by
+ * similarity either: two photos of different pages with a similar layout
+ * look alike to any cheap perceptual hash, and returning the text of
+ * the wrong page is worse than recognising it again. Every key also
+ * contains a version made from the OCR and preprocessing settings, so
+ * results made with other settings are never returned. When the cache grows
+ * over its size limit, the least recently used entries are deleted.
+ */
+@Component
+public class OCRCache {
+
+    /**
+     * Version of the format the entries are stored in. Changing it makes all
+     * existing entries unreachable.
+     */
+    private static final int FORMAT_VERSION = 1;
+    /**
+     * Extension of the cache entry files.
+     */
+    private static final String EXTENSION = ".ocr";
+
+    /**
+     * Whether the cache is used at all.
+     */
+    private final boolean enabled;
+    /**
+     * Folder where the entries are stored.
+     */
+    private final Path directory;
+    /**
+     * Maximum total size of all entries, in bytes.
+     */
+    private final long maxSize;
+
+    /**
+     * Sizes of all entries by their file name, ordered from the least to the
+     * most recently used.
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Total size of all entries, in bytes.
+     */
+    private long totalSize = 0;
+
+    @Autowired
+    public OCRCache(
+            @Value("${ocr.cache.enabled:true}") boolean enabled,
+            @Value("${ocr.cache.directory:data/ocr-cache}") String directory,
+            @Value("${ocr.cache.max-size-mb:256}") long maxSizeMb
+    ) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.maxSize = maxSizeMb * 1024 * 1024;
+        if (enabled) loadIndex();
+    }
+
+    /**
+     * Creates the key of a file. The key depends on the contents of the file,
+     * not on its name or location.
+     * @param file The file.
+     * @param settingsVersion Description of all settings that affect the
+     *                        result of OCR.
+     * @return The key, or null if the file can't be read or the cache is
+     * disabled.
+     */
+    public String fileKey(File file, String settingsVersion) {
+        if (!enabled) return null;
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return versionPrefix(settingsVersion) + "-file-" + toHex(digest.digest(), digest.getDigestLength());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Creates the key of an image. The key depends on its size, type and
+     * every pixel.
+     * @param image The image, with 8 bits per channel.
+     * @param settingsVersion Description of all settings that affect the
+     *                        result of OCR, including the preprocessing.
+     * @return The key, or null if the cache is disabled.
+     */
+    public String imageKey(Mat image, String settingsVersion) {
+        if (!enabled) return null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((image.rows() + "x" + image.cols() + "x" + image.type()).getBytes(StandardCharsets.UTF_8));
+            Mat continuous = image.isContinuous() ? image : image.clone();
+            Mat bytes = continuous;
+            if (continuous.depth() != CvType.CV_8U) {
+                bytes = new Mat();
+                continuous.convertTo(bytes, CvType.CV_8U);
+            }
+            byte[] pixels = new byte[(int)(bytes.total() * bytes.channels())];
+            bytes.get(0, 0, pixels);
+            digest.update(pixels);
+            return versionPrefix(settingsVersion) + "-img-" + toHex(digest.digest(), digest.getDigestLength());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gets a cached result.
+     * @param key Key of the result.
+     * @return The result, or empty if it isn't cached.
+     */
+    public Optional<RecognitionResult> get(String key) {
+        if (key == null) return Optional.empty();
+        String name = key + EXTENSION;
+        synchronized (this) {
+            if (!entries.containsKey(name)) return Optional.empty();
+        }
+        Path path = directory.resolve(name);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            RecognitionResult result = read(input);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            synchronized (this) {
+                entries.get(name); // marks the entry as recently used
+            }
+            return Optional.of(result);
+        } catch (IOException e) {
+            e.printStackTrace();
+            remove(name);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores a result in the cache, removing the least recently used entries
+     * if the cache becomes too big.
+     * @param key Key of the result.
+     * @param result The result.
+     */
+    public void put(String key, RecognitionResult result) {
+        if (key == null) return;
+        String name = key + EXTENSION;
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                write(output, result);
+            }
+            Path path = Files.move(temporary, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            long size = Files.size(path);
+            synchronized (this) {
+                Long previous = entries.put(name, size);
+                totalSize += size - (previous == null ? 0 : previous);
+            }
+            evict();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits in its
+     * size limit.
+     */
+    private void evict() {
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+            while (totalSize > maxSize && iterator.hasNext()) {
+                Map.Entry<String, Long> entry = iterator.next();
+                totalSize -= entry.getValue();
+                evicted.add(entry.getKey());
+                iterator.remove();
+            }
+        }
+        for (String name : evicted) {
+            try {
+                Files.deleteIfExists(directory.resolve(name));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Removes a single entry.
+     * @param name File name of the entry.
+     */
+    private void remove(String name) {
+        synchronized (this) {
+            Long size = entries.remove(name);
+            if (size != null) totalSize -= size;
+        }
+        try {
+            Files.deleteIfExists(directory.resolve(name));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Finds the entries already stored on disk. Their last modified time is
+     * the last time they were used.
+     */
+    private void loadIndex() {
+        if (!Files.isDirectory(directory)) return;
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(x -> x.getFileName().toString().endsWith(EXTENSION))
+                    .sorted(Comparator.comparingLong(x -> x.toFile().lastModified()))
+                    .forEach(x -> {
+                        long size = x.toFile().length();
+                        entries.put(x.getFileName().toString(), size);
+                        totalSize += size;
+                    });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        evict();
+    }
+
+    /**
+     * Creates the start of every key made with the given settings.
+     * @param settingsVersion Description of the settings.
+     * @return The first 16 hex digits of the settings' digest.
+     */
+    private String versionPrefix(String settingsVersion) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest((FORMAT_VERSION + "|" + settingsVersion).getBytes(StandardCharsets.UTF_8));
+            return toHex(bytes, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the first bytes of an array as hex digits.
+     * @param bytes The bytes.
+     * @param length How many bytes to write.
+     * @return Two lowercase hex digits per byte.
+     */
+    private String toHex(byte[] bytes, int length) {
+        StringBuilder hex = new StringBuilder(length * 2);
+        for (int i = 0; i < length; i++) {
+            hex.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private void write(DataOutputStream output, RecognitionResult result) throws IOException {
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(result.pages().size());
+        for (String page : result.pages()) {
+            writeString(output, page);
+        }
+        output.writeInt(result.words().size());
+        for (RecognizedWord word : result.words()) {
+            writeString(output, word.text());
+            output.writeFloat(word.confidence());
+            output.writeInt(word.x());
+            output.writeInt(word.y());
+            output.writeInt(word.width());
+            output.writeInt(word.height());
+            output.writeInt(word.line());
+        }
+    }
+
+    private RecognitionResult read(DataInputStream input) throws IOException {
+        if (input.readInt() != FORMAT_VERSION) throw new IOException("Unsupported cache entry version");
+        int pageCount = input.readInt();
+        List<String> pages = new ArrayList<>(pageCount);
+        for (int i = 0; i < pageCount; i++) {
+            pages.add(readString(input));
+        }
+        int wordCount = input.readInt();
+        List<RecognizedWord> words = new ArrayList<>(wordCount);
+        for (int i = 0; i < wordCount; i++) {
+            words.add(new RecognizedWord(readString(input), input.readFloat(), input.readInt(),
+                    input.readInt(), input.readInt(), input.readInt(), input.readInt()));
+        }
+        return new RecognitionResult(pages, words);
+    }
+
+    private void writeString(DataOutputStream output, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,290 @@
+package bookreader.components;
+
+import bookreader.models.InputSource;
+import bookreader.models.PreprocessingStage;
+import bookreader.utils.TextUtils;
+import net.sourceforge.tess4j.TesseractException;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Finds the OCR configuration that suits our inputs best. Only active in the
+ * "tune" profile, for example:
+ * <pre>
+ * java -jar bookreader.jar --spring.profiles.active=tune --tune.samples=samples
+ * </pre>
+ * The samples folder contains page images, each with a .txt file of the same
+ * name holding the correct text of the page. Every combination of engine
+ * mode, page segmentation mode, preprocessing stages and text x-height is
+ * run over all samples, and its throughput and character error rate are
+ * printed. The fastest combination whose error rate is within the target is
+ * written to a properties file that is imported at startup, see
+ * application.properties.
+ *
+ * The samples are recognised through {@link OCR} as the input source given
+ * by tune.source, so they get the same language, parallel blocks and second
+ * pass over uncertain lines as real inputs of that source. The preprocessing
+ * stages are only saved for that source, so camera pictures, image files and
+ * document pages are tuned with separate runs on their own samples. The
+ * engine modes and the x-height are shared by all sources. Camera drafts
+ * have their own settings and are replaced by the refined text, so they
+ * aren't tuned.
+ */
+@Component
+@Profile("tune")
+public class OCRTuner implements ApplicationRunner {
+
+    /**
+     * Extensions of the sample images.
+     */
+    private static final Set<String> EXTENSIONS = Set.of("png", "jpg", "jpeg", "bmp", "tif", "tiff");
+
+    private final String samples;
+    private final Path output;
+    /**
+     * Highest mean character error rate a configuration can have to be
+     * chosen.
+     */
+    private final double maxErrorRate;
+    /**
+     * What kind of input the samples are.
+     */
+    private final InputSource source;
+    private final List<Integer> engineModes;
+    private final List<Integer> pageSegModes;
+    private final List<List<PreprocessingStage>> preprocessing;
+    /**
+     * X-heights tried for preprocessing that contains
+     * {@link PreprocessingStage#NORMALIZE_RESOLUTION}.
+     */
+    private final List<Integer> xHeights;
+
+    // Dependencies
+    private final OCR ocr;
+    private final TextUtils textUtils;
+    private final OpenCVLoader openCVLoader;
+
+    @Autowired
+    public OCRTuner(
+            @Value("${tune.samples:}") String samples,
+            @Value("${tune.output:data/ocr-tuned.properties}") String output,
+            @Value("${tune.max-cer:0.05}") double maxErrorRate,
+            @Value("${tune.source:IMAGE_FILE}") InputSource source,
+            @Value("${tune.engine-modes:0,1}") String engineModes,
+            @Value("${tune.page-seg-modes:3,4,6}") String pageSegModes,
+            @Value("${tune.preprocessing:GRAYSCALE;GRAYSCALE,DESKEW;GRAYSCALE,NORMALIZE_RESOLUTION;GRAYSCALE,DESKEW,NORMALIZE_RESOLUTION}")
+                    String preprocessing,
+            @Value("${tune.x-heights:16,20,28}") String xHeights,
+            OCR ocr,
+            ImagePreprocessor imagePreprocessor,
+            TextUtils textUtils,
+            OpenCVLoader openCVLoader
+    ) {
+        this.samples = samples;
+        this.output = Path.of(output);
+        this.maxErrorRate = maxErrorRate;
+        this.source = source;
+        this.engineModes = parseIntegers(engineModes);
+        this.pageSegModes = parseIntegers(pageSegModes);
+        this.preprocessing = Arrays.stream(preprocessing.split(";"))
+                .map(imagePreprocessor::parseStages)
+                .toList();
+        this.xHeights = parseIntegers(xHeights);
+        this.ocr = ocr;
+        this.textUtils = textUtils;
+        this.openCVLoader = openCVLoader;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (samples.isEmpty()) {
+            System.out.println("No samples folder given. Set it with --tune.samples=<folder>");
+            return;
+        }
+        openCVLoader.awaitLoaded();
+        List<Sample> sampleList = loadSamples(Path.of(samples));
+        if (sampleList.isEmpty()) {
+            System.out.println("No samples with a reference text found in " + samples);
+            return;
+        }
+        System.out.println("Tuning " + source + " on " + sampleList.size() + " samples");
+
+        List<Result> results = new ArrayList<>();
+        for (Configuration configuration : configurations()) {
+            try {
+                Result result = evaluate(configuration, sampleList);
+                results.add(result);
+                System.out.printf("%s: %.2f pages/s, CER %.2f%%%n", configuration,
+                        result.pagesPerSecond(), result.errorRate() * 100);
+            } catch (TesseractException e) {
+                System.out.println(configuration + ": failed, " + e.getMessage());
+            }
+        }
+        if (results.isEmpty()) return;
+
+        Optional<Result> fastestAccurate = results.stream()
+                .filter(x -> x.errorRate() <= maxErrorRate)
+                .max(Comparator.comparingDouble(Result::pagesPerSecond));
+        Result best = fastestAccurate.orElseGet(() -> results.stream()
+                .min(Comparator.comparingDouble(Result::errorRate)).orElseThrow());
+        if (fastestAccurate.isEmpty()) {
+            System.out.printf("No configuration reaches a CER of %.2f%%, using the most accurate one%n",
+                    maxErrorRate * 100);
+        }
+        System.out.println("Best: " + best.configuration());
+        save(best);
+    }
+
+    /**
+     * Lists every combination of the swept settings. The x-height is only
+     * varied for preprocessing that normalises the resolution.
+     * @return The combinations.
+     */
+    private List<Configuration> configurations() {
+        List<Configuration> configurations = new ArrayList<>();
+        for (int engineMode : engineModes) {
+            for (int pageSegMode : pageSegModes) {
+                for (List<PreprocessingStage> stages : preprocessing) {
+                    List<Integer> heights = stages.contains(PreprocessingStage.NORMALIZE_RESOLUTION)
+                            ? xHeights : List.of(-1);
+                    for (int xHeight : heights) {
+                        configurations.add(new Configuration(engineMode, pageSegMode, stages, xHeight));
+                    }
+                }
+            }
+        }
+        return configurations;
+    }
+
+    /**
+     * Runs a configuration over all samples. The first sample is recognised
+     * once before timing, so loading the models isn't counted.
+     * @param configuration The configuration.
+     * @param sampleList The samples.
+     * @return The throughput and mean error rate of the configuration.
+     * @throws TesseractException If a sample can't be recognised.
+     */
+    private Result evaluate(Configuration configuration, List<Sample> sampleList) throws TesseractException {
+        recognise(configuration, sampleList.get(0).image());
+        double errorRate = 0;
+        long start = System.nanoTime();
+        for (Sample sample : sampleList) {
+            String text = recognise(configuration, sample.image());
+            errorRate += textUtils.characterErrorRate(sample.reference(), text);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return new Result(configuration, sampleList.size() / seconds, errorRate / sampleList.size());
+    }
+
+    private String recognise(Configuration configuration, Mat image) throws TesseractException {
+        int xHeight = configuration.xHeight() > 0 ? configuration.xHeight() : 20;
+        return ocr.processImageWith(image, source, configuration.engineMode(), configuration.pageSegMode(),
+                configuration.stages(), xHeight);
+    }
+
+    /**
+     * Writes a configuration as properties that override the defaults in
+     * application.properties. Properties saved by runs for other sources are
+     * kept.
+     * @param result The chosen configuration and its measurements.
+     * @throws IOException If the file can't be written.
+     */
+    private void save(Result result) throws IOException {
+        Configuration configuration = result.configuration();
+        String stages = configuration.stages().stream().map(Enum::name).collect(Collectors.joining(","));
+        Properties properties = new Properties();
+        if (Files.exists(output)) {
+            try (Reader reader = Files.newBufferedReader(output, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+        }
+        properties.setProperty("ocr.engine-mode", String.valueOf(configuration.engineMode()));
+        properties.setProperty("ocr.page-seg-mode", String.valueOf(configuration.pageSegMode()));
+        properties.setProperty("ocr.preprocessing." + source.name().toLowerCase(Locale.ROOT).replace('_', '-'), stages);
+        if (configuration.xHeight() > 0) {
+            properties.setProperty("ocr.preprocessing.target-x-height", String.valueOf(configuration.xHeight()));
+        }
+        if (output.getParent() != null) Files.createDirectories(output.getParent());
+        try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            properties.store(writer, String.format("Tuned OCR configuration for %s: %.2f pages/s, CER %.2f%%",
+                    source, result.pagesPerSecond(), result.errorRate() * 100));
+        }
+        System.out.println("Saved to " + output);
+    }
+
+    /**
+     * Finds all sample images that have a reference text next to them and
+     * reads them as grayscale images.
+     * @param folder The samples folder.
+     * @return The samples, sorted by file name.
+     * @throws IOException If the folder or a reference can't be read.
+     */
+    private List<Sample> loadSamples(Path folder) throws IOException {
+        List<Path> images;
+        try (Stream<Path> paths = Files.list(folder)) {
+            images = paths.filter(x -> EXTENSIONS.contains(extension(x))).sorted().toList();
+        }
+        List<Sample> sampleList = new ArrayList<>();
+        for (Path image : images) {
+            String name = image.getFileName().toString();
+            Path reference = image.resolveSibling(name.substring(0, name.lastIndexOf('.')) + ".txt");
+            if (!Files.exists(reference)) continue;
+            Mat mat = Imgcodecs.imread(image.toString(), Imgcodecs.IMREAD_GRAYSCALE);
+            if (mat.empty()) continue;
+            sampleList.add(new Sample(mat, Files.readString(reference, StandardCharsets.UTF_8)));
+        }
+        return sampleList;
+    }
+
+    private String extension(Path path) {
+        String name = path.getFileName().toString();
+        int lastDot = name.lastIndexOf('.');
+        return lastDot == -1 ? "" : name.substring(lastDot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private List<Integer> parseIntegers(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(x -> !x.isEmpty())
+                .map(Integer::parseInt)
+                .toList();
+    }
+
+    /**
+     * A page image with its correct text.
+     */
+    private record Sample(Mat image, String reference) {
+    }
+
+    /**
+     * A combination of settings that is tried.
+     * @param xHeight Target x-height, or -1 if the resolution isn't
+     *                normalised.
+     */
+    private record Configuration(int engineMode, int pageSegMode, List<PreprocessingStage> stages, int xHeight) {
+        @Override
+        public String toString() {
+            return "OEM " + engineMode + ", PSM " + pageSegMode + ", " + stages
+                    + (xHeight > 0 ? ", x-height " + xHeight : "");
+        }
+    }
+
+    private record Result(Configuration configuration, double pagesPerSecond, double errorRate) {
+    }
+}
@@ -4,12 +4,39 @@ import nu.pattern.OpenCV;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Loads the native OpenCV library. Loading happens in the background, so
+ * that it doesn't delay the main screen. Code that uses OpenCV must wait for
+ * {@link OpenCVLoader#awaitLoaded()} first.
+ */
 @Component
 public class OpenCVLoader {
 
+    /**
+     * Completed once the library is loaded.
+     */
+    private final CompletableFuture<Void> loaded;
+
     @Autowired
     public OpenCVLoader() {
-        OpenCV.loadShared();
+        this.loaded = CompletableFuture.runAsync(OpenCV::loadShared);
+    }
+
+    /**
+     * Gets a future that completes once the library is loaded.
+     * @return The future. Completes exceptionally if the library couldn't be
+     * loaded.
+     */
+    public CompletableFuture<Void> getLoaded() {
+        return loaded;
+    }
 
+    /**
+     * Waits until the library is loaded. Returns immediately if it already is.
+     */
+    public void awaitLoaded() {
+        loaded.join();
     }
 }
@@ -0,0 +1,141 @@
+package bookreader.components;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Turns the pages of multi-page documents, such as PDFs and TIFFs, into
+ * individual images one at a time, so they can be recognised separately.
+ */
+@Component
+public class PageRasterizer {
+
+    /**
+     * Resolution at which PDF pages are rendered.
+     */
+    private final int pdfDpi;
+
+    @Autowired
+    public PageRasterizer(@Value("${ocr.pdf.dpi:300}") int pdfDpi) {
+        this.pdfDpi = pdfDpi;
+    }
+
+    /**
+     * Opens a document for rasterizing. PDFs are rendered with PDFBox and
+     * everything else is read with the available ImageIO readers.
+     * @param file The document.
+     * @return The opened document. It must be closed after use.
+     * @throws IOException If the file can't be read or its format is not
+     * supported.
+     */
+    public Document open(File file) throws IOException {
+        if (file.getName().toLowerCase(Locale.ROOT).endsWith(".pdf")) {
+            return new PdfDocument(PDDocument.load(file), pdfDpi);
+        }
+        return new ImageDocument(file);
+    }
+
+    /**
+     * A document whose pages can be rendered one by one. Rendering is not
+     * thread-safe, pages should be rendered from a single thread.
+     */
+    public interface Document extends Closeable {
+        /**
+         * Gets how many pages the document has.
+         * @return Amount of pages.
+         */
+        int getPageCount();
+
+        /**
+         * Renders a single page.
+         * @param index Index of the page, starting from 0.
+         * @return The page as an image.
+         * @throws IOException If the page can't be rendered.
+         */
+        BufferedImage renderPage(int index) throws IOException;
+    }
+
+    /**
+     * PDF document rendered through PDFBox.
+     */
+    private static class PdfDocument implements Document {
+
+        private final PDDocument document;
+        private final PDFRenderer renderer;
+        private final int dpi;
+
+        private PdfDocument(PDDocument document, int dpi) {
+            this.document = document;
+            this.renderer = new PDFRenderer(document);
+            this.dpi = dpi;
+        }
+
+        @Override
+        public int getPageCount() {
+            return document.getNumberOfPages();
+        }
+
+        @Override
+        public BufferedImage renderPage(int index) throws IOException {
+            return renderer.renderImageWithDPI(index, dpi, ImageType.GRAY);
+        }
+
+        @Override
+        public void close() throws IOException {
+            document.close();
+        }
+    }
+
+    /**
+     * Single or multi-page image, such as a TIFF, read through ImageIO.
+     */
+    private static class ImageDocument implements Document {
+
+        private final ImageInputStream input;
+        private final ImageReader reader;
+        private final int pageCount;
+
+        private ImageDocument(File file) throws IOException {
+            this.input = ImageIO.createImageInputStream(file);
+            if (this.input == null) throw new IOException("Could not open " + file);
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(this.input);
+            if (!readers.hasNext()) {
+                this.input.close();
+                throw new IOException("Unsupported file format: " + file);
+            }
+            this.reader = readers.next();
+            this.reader.setInput(this.input);
+            this.pageCount = this.reader.getNumImages(true);
+        }
+
+        @Override
+        public int getPageCount() {
+            return pageCount;
+        }
+
+        @Override
+        public BufferedImage renderPage(int index) throws IOException {
+            return reader.read(index);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.dispose();
+            input.close();
+        }
+    }
+}
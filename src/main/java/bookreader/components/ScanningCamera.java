@@ -4,12 +4,14 @@ import com.github.sarxos.webcam.*;
 import javafx.scene.media.Media;
 import javafx.scene.media.MediaPlayer;
 import javafx.util.Duration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
 
 @Component
+@Profile("!batch & !tune")
 public class ScanningCamera implements WebcamMotionListener{
 
     /**
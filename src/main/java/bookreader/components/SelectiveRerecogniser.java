@@ -0,0 +1,231 @@
+package bookreader.components;
+
+import bookreader.models.OCRSettings;
+import bookreader.models.RecognizedWord;
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.TesseractException;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Recognises images in two passes. The first pass recognises the whole image
+ * once. The second pass only goes over the lines whose confidence is below a
+ * threshold and recognises them again on their own, with a single line
+ * segmentation mode and on a binarised, enlarged copy. The hypothesis with
+ * the highest score is kept, so the extra work is proportional to the bad
+ * parts of the image instead of the whole image.
+ *
+ * The confidence of a line is the confidence of its words weighted by their
+ * length, so a single uncertain short word, like a page number or a stray
+ * mark, doesn't make a whole line be recognised three times. Hypotheses are
+ * scored over the same span: the characters of the longest hypothesis of
+ * the line. Characters a hypothesis doesn't have count with no confidence,
+ * so dropping uncertain words doesn't make a hypothesis look better.
+ */
+@Component
+public class SelectiveRerecogniser {
+
+    /**
+     * Empty space added around a line before it's recognised again, in
+     * pixels.
+     */
+    private static final int LINE_PADDING = 4;
+    /**
+     * Factor by which lines are enlarged for the binarised hypothesis.
+     */
+    private static final double LINE_UPSCALE = 2.0;
+
+    /**
+     * Lines with a confidence below this are recognised again. 0 turns the
+     * second pass off.
+     */
+    private final float confidenceThreshold;
+
+    // Dependencies
+    private final NativeRecognizer nativeRecognizer;
+
+    @Autowired
+    public SelectiveRerecogniser(
+            @Value("${ocr.rerecognition.confidence-threshold:60}") float confidenceThreshold,
+            NativeRecognizer nativeRecognizer
+    ) {
+        this.confidenceThreshold = confidenceThreshold;
+        this.nativeRecognizer = nativeRecognizer;
+    }
+
+    /**
+     * Gets the confidence below which lines are recognised again.
+     * @return The threshold, or 0 if the second pass is turned off.
+     */
+    public float getConfidenceThreshold() {
+        return confidenceThreshold;
+    }
+
+    /**
+     * Recognises a grayscale image, recognising its uncertain lines again.
+     * @param gray Single channel grayscale material.
+     * @param settings Settings to recognise the image with.
+     * @return The recognised text, with lines separated by new lines.
+     * @throws TesseractException If the image can't be recognised.
+     */
+    public String recognise(Mat gray, OCRSettings settings) throws TesseractException {
+        List<RecognizedWord> words = nativeRecognizer.recogniseWords(gray, settings);
+        return joinLines(rerecognise(gray, words, settings));
+    }
+
+    /**
+     * Recognises a region of a grayscale image, recognising its uncertain
+     * lines again.
+     * @param gray Single channel grayscale material.
+     * @param region The region. Parts outside the image are ignored.
+     * @param settings Settings to recognise the region with.
+     * @return The recognised text, or an empty string if the region is
+     * completely outside the image.
+     * @throws TesseractException If the region can't be recognised.
+     */
+    public String recognise(Mat gray, Rectangle region, OCRSettings settings) throws TesseractException {
+        Rectangle clipped = region.intersection(new Rectangle(0, 0, gray.width(), gray.height()));
+        if (clipped.isEmpty()) return "";
+        return recognise(gray.submat(new Rect(clipped.x, clipped.y, clipped.width, clipped.height)), settings);
+    }
+
+    /**
+     * Recognises again the lines whose confidence is below the threshold and
+     * replaces their words if a better hypothesis is found.
+     * @param gray The image the words were recognised from.
+     * @param words Words from the first pass, in reading order.
+     * @param settings Settings the first pass was made with.
+     * @return The words of every line from the best hypothesis, in reading
+     * order. Replaced words keep the line index of the line they replace.
+     */
+    public List<RecognizedWord> rerecognise(Mat gray, List<RecognizedWord> words, OCRSettings settings) {
+        if (confidenceThreshold <= 0) return words;
+
+        Map<Integer, List<RecognizedWord>> lines = new LinkedHashMap<>();
+        for (RecognizedWord word : words) {
+            lines.computeIfAbsent(word.line(), x -> new ArrayList<>()).add(word);
+        }
+
+        OCRSettings lineSettings = settings.withPageSegMode(ITessAPI.TessPageSegMode.PSM_SINGLE_LINE);
+        List<RecognizedWord> result = new ArrayList<>(words.size());
+        for (List<RecognizedWord> line : lines.values()) {
+            int span = characterCount(line);
+            if (span == 0 || score(line, span) >= confidenceThreshold) {
+                result.addAll(line);
+                continue;
+            }
+            List<RecognizedWord> best = line;
+            try {
+                List<List<RecognizedWord>> hypotheses = recogniseLine(gray, line, lineSettings);
+                for (List<RecognizedWord> hypothesis : hypotheses) {
+                    span = Math.max(span, characterCount(hypothesis));
+                }
+                for (List<RecognizedWord> hypothesis : hypotheses) {
+                    if (score(hypothesis, span) > score(best, span)) best = hypothesis;
+                }
+            } catch (TesseractException e) {
+                e.printStackTrace();
+            }
+            result.addAll(best);
+        }
+        return result;
+    }
+
+    /**
+     * Recognises a single line again in different ways.
+     * @param gray The image the line is in.
+     * @param line Words of the line from the first pass.
+     * @param lineSettings Settings with a single line segmentation mode.
+     * @return The words of every hypothesis, in the coordinates of the image
+     * and with the index of the line.
+     * @throws TesseractException If the line can't be recognised.
+     */
+    private List<List<RecognizedWord>> recogniseLine(Mat gray, List<RecognizedWord> line, OCRSettings lineSettings)
+            throws TesseractException {
+        Rectangle bounds = new Rectangle(line.get(0).x(), line.get(0).y(), line.get(0).width(), line.get(0).height());
+        for (RecognizedWord word : line) {
+            bounds.add(new Rectangle(word.x(), word.y(), word.width(), word.height()));
+        }
+        bounds.grow(LINE_PADDING, LINE_PADDING);
+        bounds = bounds.intersection(new Rectangle(0, 0, gray.width(), gray.height()));
+        if (bounds.isEmpty()) return List.of();
+        Mat region = gray.submat(new Rect(bounds.x, bounds.y, bounds.width, bounds.height));
+
+        Mat binary = new Mat();
+        Imgproc.threshold(region, binary, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+        Mat enlarged = new Mat();
+        Imgproc.resize(binary, enlarged, new Size(), LINE_UPSCALE, LINE_UPSCALE, Imgproc.INTER_CUBIC);
+
+        int lineIndex = line.get(0).line();
+        return List.of(
+                translate(nativeRecognizer.recogniseWords(region, lineSettings), bounds, 1.0, lineIndex),
+                translate(nativeRecognizer.recogniseWords(enlarged, lineSettings), bounds, LINE_UPSCALE, lineIndex)
+        );
+    }
+
+    /**
+     * Moves words recognised from a part of an image back into the
+     * coordinates of the whole image.
+     * @param words Words recognised from the part.
+     * @param bounds Where the part is in the image.
+     * @param scale How much the part was enlarged before recognition.
+     * @param line Index of the line the words belong to.
+     * @return The moved words.
+     */
+    private List<RecognizedWord> translate(List<RecognizedWord> words, Rectangle bounds, double scale, int line) {
+        return words.stream()
+                .map(x -> new RecognizedWord(x.text(), x.confidence(),
+                        bounds.x + (int)(x.x() / scale), bounds.y + (int)(x.y() / scale),
+                        (int)(x.width() / scale), (int)(x.height() / scale), line))
+                .toList();
+    }
+
+    /**
+     * Scores a hypothesis of a line by the confidence of its characters.
+     * @param words Words of the hypothesis.
+     * @param span Amount of characters to spread the confidence over. If the
+     *             hypothesis has fewer, the rest count as 0.
+     * @return The mean confidence of the characters, or -1 if the span is
+     * empty.
+     */
+    private double score(List<RecognizedWord> words, int span) {
+        if (span == 0) return -1;
+        double total = 0;
+        for (RecognizedWord word : words) {
+            total += (double) word.confidence() * word.text().length();
+        }
+        return total / span;
+    }
+
+    private int characterCount(List<RecognizedWord> words) {
+        return words.stream().mapToInt(x -> x.text().length()).sum();
+    }
+
+    /**
+     * Joins words into text.
+     * @param words Words in reading order.
+     * @return The words of every line separated by spaces, and the lines
+     * separated by new lines.
+     */
+    private String joinLines(List<RecognizedWord> words) {
+        Map<Integer, List<RecognizedWord>> lines = new LinkedHashMap<>();
+        for (RecognizedWord word : words) {
+            lines.computeIfAbsent(word.line(), x -> new ArrayList<>()).add(word);
+        }
+        return lines.values().stream()
+                .map(line -> line.stream().map(RecognizedWord::text).collect(Collectors.joining(" ")))
+                .collect(Collectors.joining("\n"));
+    }
+}
@@ -15,15 +15,22 @@ import javax.speech.Central;
 import javax.speech.EngineException;
 import javax.speech.synthesis.*;
 import java.io.*;
+import java.net.URI;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 public class TTSSynthesiser {
 
+    /**
+     * Folder where the sound files of the words are written.
+     */
+    private static final String SOUND_FOLDER = "data/tts/";
+
     /**
      * The sound that is currently playing.
      */
@@ -39,6 +46,25 @@ public class TTSSynthesiser {
      * with tesseract, usually only 'bg' and 'en'.
      */
     private String language = null;
+    /**
+     * The language of every word in {@link TTSSynthesiser#wordSounds}, by
+     * the sentence it's in. Words without one are read in
+     * {@link TTSSynthesiser#language}.
+     */
+    private String[] wordLanguages = null;
+
+    /**
+     * Incremented whenever the loaded words are replaced, so that sounds
+     * still being loaded for the previous words are thrown away.
+     */
+    private volatile int generation = 0;
+    /**
+     * Counter used to give every sound file a unique name. Sounds are moved
+     * to other indices when words are replaced, so the index of a word can't
+     * be used as its file name. The counter starts again with every run, so
+     * the files of earlier runs are deleted on startup.
+     */
+    private final AtomicInteger soundFileCounter = new AtomicInteger();
 
     // Dependencies
     private final TextHighlighter textHighlighter;
@@ -51,6 +77,7 @@ public class TTSSynthesiser {
     ) {
         this.textHighlighter = textHighlighter;
         this.textUtils = textUtils;
+        deleteSoundFiles();
     }
 
     public void testGoogle() throws IOException {
@@ -265,7 +292,8 @@ public class TTSSynthesiser {
 
     /**
      * Sets the language for the synthesiser to use forward. Must be
-     * set before being able to load text.
+     * set before being able to load text. Sentences of the loaded text that
+     * are in another language are still read in their own language.
      * @param lang The language code for the synthesiser. Should be
      *             either 'bg' or 'en', or any code compatible with
      *             tesseract.
@@ -274,6 +302,14 @@ public class TTSSynthesiser {
         this.language = lang;
     }
 
+    /**
+     * Gets the language the synthesiser currently uses.
+     * @return The language code, or null if it isn't set.
+     */
+    public String getLanguage() {
+        return this.language;
+    }
+
     /**
      * Checks whether the synthesiser is in a state where it can load text.
      *
@@ -300,12 +336,91 @@ public class TTSSynthesiser {
         // dispose of old files
         disposeOfAudioFiles();
 
-        this.wordSounds = new MediaPlayer[words.size()];
-        Arrays.fill(this.wordSounds, null);
+        String[] languages = textUtils.getWordLanguages(words);
+        int generation;
+        synchronized (this) {
+            this.wordSounds = new MediaPlayer[words.size()];
+            Arrays.fill(this.wordSounds, null);
+            this.wordLanguages = languages;
+            generation = ++this.generation;
+        }
+
+        new Thread(() -> {
+            for (int i = 0; i < words.size() && generation == this.generation; i++) {
+                loadIndividual(i, words.get(i), generation);
+            }
+        }).start();
+    }
+
+    /**
+     * Loads the sounds of more words, placed after the already loaded ones.
+     * Used when a document is loaded page by page.
+     * @param words List of the words to add.
+     * @throws IllegalStateException If the synthesiser is not in a state to be
+     * currently loaded.
+     * @see TTSSynthesiser#loadSounds(List)
+     */
+    public void appendSounds(List<String> words) throws IllegalStateException {
+        if (this.wordSounds == null) {
+            loadSounds(words);
+            return;
+        }
+        String[] languages = textUtils.getWordLanguages(words);
+        int offset, generation;
+        synchronized (this) {
+            offset = this.wordSounds.length;
+            this.wordSounds = Arrays.copyOf(this.wordSounds, offset + words.size());
+            this.wordLanguages = Arrays.copyOf(this.wordLanguages, offset + languages.length);
+            System.arraycopy(languages, 0, this.wordLanguages, offset, languages.length);
+            generation = this.generation;
+        }
 
         new Thread(() -> {
-            for (int i = 0; i < words.size(); i++) {
-                loadIndividual(i, words.get(i));
+            for (int i = 0; i < words.size() && generation == this.generation; i++) {
+                loadIndividual(offset + i, words.get(i), generation);
+            }
+        }).start();
+    }
+
+    /**
+     * Replaces the loaded words with a new version of the same text, such as
+     * a refined recognition of a draft. Sounds of words that didn't change
+     * are kept, only the changed words are loaded again.
+     * @param words List of all words of the new version.
+     * @param reusedFrom For every new word, the index of the old word with
+     *                   the same text, or -1 if the word is new or changed.
+     * @throws IllegalStateException If the synthesiser is not in a state to be
+     * currently loaded.
+     * @see TTSSynthesiser#loadSounds(List)
+     */
+    public void replaceSounds(List<String> words, int[] reusedFrom) throws IllegalStateException {
+        if (this.wordSounds == null) {
+            loadSounds(words);
+            return;
+        }
+        String[] languages = textUtils.getWordLanguages(words);
+        int generation;
+        synchronized (this) {
+            MediaPlayer[] oldSounds = this.wordSounds;
+            MediaPlayer[] sounds = new MediaPlayer[words.size()];
+            boolean[] reused = new boolean[oldSounds.length];
+            for (int i = 0; i < sounds.length; i++) {
+                int old = reusedFrom[i];
+                if (old < 0 || old >= oldSounds.length || reused[old]) continue;
+                sounds[i] = oldSounds[old];
+                reused[old] = true;
+            }
+            for (int i = 0; i < oldSounds.length; i++) {
+                if (!reused[i] && oldSounds[i] != null) disposeSound(oldSounds[i]);
+            }
+            this.wordSounds = sounds;
+            this.wordLanguages = languages;
+            generation = ++this.generation;
+        }
+
+        new Thread(() -> {
+            for (int i = 0; i < words.size() && generation == this.generation; i++) {
+                loadIndividual(i, words.get(i), generation);
             }
         }).start();
     }
@@ -316,24 +431,43 @@ public class TTSSynthesiser {
      * @param text The text to load.
      */
     private void loadIndividual(int index, String text) {
-        if (wordSounds[index] != null) return;
+        loadIndividual(index, text, this.generation);
+    }
+
+    /**
+     * Loads a word at a given index if it wasn't already loaded and the
+     * words haven't been replaced in the meantime.
+     * @param index Index of the word in the words list.
+     * @param text The text to load.
+     * @param generation Value of {@link TTSSynthesiser#generation} when the
+     *                   word was requested.
+     */
+    private void loadIndividual(int index, String text, int generation) {
+        if (generation != this.generation || wordSounds[index] != null) return;
+        String fileName = "word" + soundFileCounter.getAndIncrement() + ".mp3";
         ProcessBuilder pb = new ProcessBuilder("gtts-cli",
-                "--output", "word" + index + ".mp3",
-                "--lang", this.language,
+                "--output", fileName,
+                "--lang", getWordLanguage(index),
                 text);
-        pb.directory(new File("data/tts/"));
+        pb.directory(new File(SOUND_FOLDER));
 
 
         try {
             Process process = pb.start();
             boolean finished = process.waitFor(1000, TimeUnit.MILLISECONDS);
-            if (finished) {
-                wordSounds[index] = new MediaPlayer(new Media(new File("data/tts/word" + index + ".mp3").toURI().toString()));
-                wordSounds[index].setOnReady(() -> {
+            if (!finished) {
+                process.destroy();
+                new File(SOUND_FOLDER + fileName).delete();
+            } else {
+                MediaPlayer sound = new MediaPlayer(new Media(new File(SOUND_FOLDER + fileName).toURI().toString()));
+                sound.setOnReady(() -> {
                     Duration subtractDuration = textUtils.getSubtractDuration(text);
-                    wordSounds[index].setStopTime(wordSounds[index].getTotalDuration().subtract(subtractDuration));
+                    sound.setStopTime(sound.getTotalDuration().subtract(subtractDuration));
                 });
-
+                synchronized (this) {
+                    if (generation == this.generation) wordSounds[index] = sound;
+                    else disposeSound(sound);
+                }
             }
             //wordSounds[index].getTotalDuration().subtract(Duration.millis(100));
         } catch (IOException | InterruptedException e) {
@@ -341,6 +475,18 @@ public class TTSSynthesiser {
         }
     }
 
+    /**
+     * Gets the language a word is read in.
+     * @param index Index of the word in the words list.
+     * @return The language of the sentence of the word, or the language of
+     * the synthesiser if it isn't known.
+     */
+    private String getWordLanguage(int index) {
+        String[] languages = this.wordLanguages;
+        if (languages == null || index >= languages.length || languages[index] == null) return this.language;
+        return languages[index];
+    }
+
     /**
      * Gets the currently playing sound.
      * @return A mediaplayer object if there is a sound currently playing,
@@ -359,7 +505,24 @@ public class TTSSynthesiser {
         if (this.wordSounds == null) {
             throw new NullPointerException("There were no loaded sounds! wordSounds was null.");
         }
-        chainReadWords(0, wordSounds.length-1, true);
+        // no upper limit, so that words appended while reading are read as well
+        chainReadWords(0, Integer.MAX_VALUE, true);
+    }
+
+    /**
+     * Starts reading the text from a given word until the end.
+     * @param index Index of the first word to read.
+     */
+    public void readFrom(int index) {
+        stopCurrentRead();
+        if (this.wordSounds == null) {
+            throw new NullPointerException("There were no loaded sounds! wordSounds was null.");
+        }
+        if (index >= wordSounds.length) return;
+        // reading selects the word after the current selection
+        if (index <= 0) textHighlighter.clearSelection();
+        else textHighlighter.selectSpecificWord(index - 1);
+        chainReadWords(Math.max(0, index), Integer.MAX_VALUE, true);
     }
 
     public void readRange(int selectionStart, int selectionEnd) {
@@ -411,6 +574,14 @@ public class TTSSynthesiser {
         this.currentSound.play();
     }
 
+    /**
+     * Checks whether a word is currently being read.
+     * @return True if a sound is playing, false otherwise.
+     */
+    public boolean isReading() {
+        return this.currentSound != null;
+    }
+
     /**
      * Stops whatever is currently being read, if any.
      */
@@ -421,14 +592,35 @@ public class TTSSynthesiser {
     }
 
     /**
-     * Disposes of all media players used
+     * Disposes of all media players used and deletes their sound files.
+     * Sounds still being loaded for the current words are thrown away.
      */
-    public void disposeOfAudioFiles() {
-        if (wordSounds == null) return;
-        for (MediaPlayer wordSound : wordSounds) {
-            if (wordSound != null && wordSound.getStatus() != MediaPlayer.Status.DISPOSED) {
-                wordSound.dispose();
+    public synchronized void disposeOfAudioFiles() {
+        this.generation++;
+        if (wordSounds != null) {
+            for (int i = 0; i < wordSounds.length; i++) {
+                if (wordSounds[i] != null) disposeSound(wordSounds[i]);
+                wordSounds[i] = null;
             }
         }
+        deleteSoundFiles();
+    }
+
+    /**
+     * Disposes of a media player and deletes its sound file.
+     * @param sound The media player.
+     */
+    private void disposeSound(MediaPlayer sound) {
+        if (sound.getStatus() != MediaPlayer.Status.DISPOSED) sound.dispose();
+        new File(URI.create(sound.getMedia().getSource())).delete();
+    }
+
+    /**
+     * Deletes the sound files of all words from the sound folder.
+     */
+    private void deleteSoundFiles() {
+        File[] files = new File(SOUND_FOLDER).listFiles((dir, name) -> name.startsWith("word") && name.endsWith(".mp3"));
+        if (files == null) return;
+        for (File file : files) file.delete();
     }
 }
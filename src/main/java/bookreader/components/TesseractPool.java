@@ -0,0 +1,150 @@
+package bookreader.components;
+
+import bookreader.models.OCRSettings;
+import net.sourceforge.tess4j.Tesseract;
+import net.sourceforge.tess4j.TesseractException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A bounded pool of tess4j {@link Tesseract} objects, used to render
+ * Tesseract's own output formats (hOCR, PDF). A Tesseract object is not
+ * thread-safe, so every call borrows one configured for the settings it
+ * needs and returns it afterwards.
+ *
+ * Tesseract objects only hold their configuration: tess4j initialises and
+ * disposes the native engine on every call, so there is nothing to warm up
+ * and the pool only limits how many run at the same time. Recognition
+ * itself goes through the {@link NativeTesseractPool}, whose handles keep
+ * their models loaded.
+ */
+@Component
+public class TesseractPool {
+
+    /**
+     * Path to the folder containing the traineddata files.
+     */
+    private final String datapath;
+
+    /**
+     * Maximum amount of engines that can be borrowed at the same time.
+     */
+    private final int size;
+
+    /**
+     * Limits the amount of engines in use to {@link TesseractPool#size}.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Idle engines, grouped by the settings they're configured with.
+     */
+    private final Map<OCRSettings, Queue<Tesseract>> idleEngines = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TesseractPool(
+            @Value("${ocr.datapath:./tessdata}") String datapath,
+            @Value("${ocr.pool.size:0}") int size
+    ) {
+        this.datapath = datapath;
+        this.size = size > 0 ? size : Runtime.getRuntime().availableProcessors();
+        this.permits = new Semaphore(this.size, true);
+    }
+
+    /**
+     * Gets the maximum amount of engines that can be used at the same time.
+     * @return The size of the pool.
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Gets the path to the folder containing the traineddata files.
+     * @return The data path used by all engines.
+     */
+    public String getDatapath() {
+        return this.datapath;
+    }
+
+    /**
+     * Takes an engine configured with the given settings out of the pool.
+     * If all engines are in use, this waits until one is returned. Every
+     * borrowed engine must be given back with
+     * {@link TesseractPool#release(OCRSettings, Tesseract)}.
+     * @param settings Settings the engine should use.
+     * @return An engine that only the caller is using.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public Tesseract borrow(OCRSettings settings) throws InterruptedException {
+        permits.acquire();
+        Tesseract engine = getIdleQueue(settings).poll();
+        return engine != null ? engine : createEngine(settings);
+    }
+
+    /**
+     * Returns a borrowed engine to the pool.
+     * @param settings The settings the engine was borrowed with.
+     * @param engine The engine.
+     */
+    public void release(OCRSettings settings, Tesseract engine) {
+        Queue<Tesseract> queue = getIdleQueue(settings);
+        if (queue.size() < size) queue.add(engine);
+        permits.release();
+    }
+
+    /**
+     * Borrows an engine, runs a task with it and returns the engine to the
+     * pool, even if the task fails.
+     * @param settings Settings the engine should use.
+     * @param task Task to run.
+     * @param <T> Type of the result.
+     * @return The result of the task.
+     * @throws TesseractException If the task fails or the thread is
+     * interrupted while waiting for an engine.
+     */
+    public <T> T execute(OCRSettings settings, EngineTask<T> task) throws TesseractException {
+        Tesseract engine;
+        try {
+            engine = borrow(settings);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TesseractException(e);
+        }
+        try {
+            return task.run(engine);
+        } finally {
+            release(settings, engine);
+        }
+    }
+
+    private Queue<Tesseract> getIdleQueue(OCRSettings settings) {
+        return idleEngines.computeIfAbsent(settings, x -> new ConcurrentLinkedQueue<>());
+    }
+
+    private Tesseract createEngine(OCRSettings settings) {
+        Tesseract engine = new Tesseract();
+        engine.setDatapath(datapath);
+        engine.setLanguage(settings.language());
+        engine.setOcrEngineMode(settings.ocrEngineMode());
+        if (settings.pageSegMode() != OCRSettings.DEFAULT_PAGE_SEG_MODE) {
+            engine.setPageSegMode(settings.pageSegMode());
+        }
+        return engine;
+    }
+
+    /**
+     * Work to do with a borrowed engine.
+     * @param <T> Type of the result.
+     */
+    public interface EngineTask<T> {
+        T run(Tesseract engine) throws TesseractException;
+    }
+}
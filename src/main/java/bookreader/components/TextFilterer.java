@@ -1,38 +1,89 @@
 package bookreader.components;
 
+import bookreader.utils.CharacterFilter;
 import bookreader.utils.TextUtils;
+import bookreader.utils.TokenizedText;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.Map;
+import java.util.Set;
+
 @Component
 public class TextFilterer {
 
+    /**
+     * Latin letters that the OCR confuses with similar cyrillic ones, and the
+     * cyrillic letters they're replaced with in Bulgarian text.
+     */
+    private static final Map<Character, Character> LATIN_TO_CYRILLIC = Map.ofEntries(
+            Map.entry('B', 'в'),
+            Map.entry('H', 'н'),
+            Map.entry('k', 'к'), Map.entry('K', 'к'),
+            Map.entry('m', 'м'),
+            Map.entry('n', 'н'),
+            Map.entry('p', 'р'), Map.entry('P', 'р'),
+            Map.entry('x', 'х'), Map.entry('X', 'х'),
+            Map.entry('y', 'у')
+    );
+    /**
+     * Characters that should not normally be in the text.
+     */
+    private static final Set<Character> UNUSUAL_CHARACTERS = Set.of('©', '|', '[', ']', '{', '}', '<', '>');
+
+    /**
+     * Filter for OCR results in Bulgarian.
+     */
+    private final CharacterFilter bulgarianFilter =
+            new CharacterFilter(LATIN_TO_CYRILLIC, UNUSUAL_CHARACTERS, true);
+    /**
+     * Filter for OCR results in any other language.
+     */
+    private final CharacterFilter defaultFilter =
+            new CharacterFilter(Map.of(), UNUSUAL_CHARACTERS, true);
+    private final CharacterFilter cyrillicFilter =
+            new CharacterFilter(LATIN_TO_CYRILLIC, Set.of(), false);
+    private final CharacterFilter unusualCharactersFilter =
+            new CharacterFilter(Map.of(), UNUSUAL_CHARACTERS, false);
+
     private final TextUtils textUtils;
+    private final DictionaryCorrector dictionaryCorrector;
 
     @Autowired
     public TextFilterer(
-        TextUtils textUtils
+        TextUtils textUtils,
+        DictionaryCorrector dictionaryCorrector
     ) {
         this.textUtils = textUtils;
+        this.dictionaryCorrector = dictionaryCorrector;
     }
 
     /**
-     * Filters the results of an OCR read of an image.
+     * Filters the results of an OCR read of an image. Multiple spaces are
+     * converted into one, lines are joined, and in Bulgarian text latin
+     * letters are replaced with similar cyrillic ones, see
+     * {@link TextFilterer#replaceEnglishLettersWithCyrillic(String)}. Unusual
+     * characters are removed, see
+     * {@link TextFilterer#removeUnusualCharactersFromText(String)}. All of
+     * it is done in a single pass over the text. Finally, words that aren't
+     * in the dictionary are corrected, see {@link DictionaryCorrector}.
      * @param raw Original text.
      * @return Result after filtering errors.
      */
     public String filterTextFromImage(String raw) {
-        // multiple spaces are converted into one
         String textLanguage = textUtils.getLanguage(raw);
+        String filtered = textLanguage.equals("bg") ? bulgarianFilter.filter(raw) : defaultFilter.filter(raw);
+        return dictionaryCorrector.correct(filtered);
+    }
 
-        raw = raw.trim().replaceAll(" +", " ");
-        raw = raw.replaceAll("-\n", "");
-        raw = raw.replaceAll("\n", " ");
-        if (textLanguage.equals("bg")) {
-            raw = replaceEnglishLettersWithCyrillic(raw);
-        }
-        raw = removeUnusualCharactersFromText(raw);
-        return raw;
+    /**
+     * Describes everything that affects the result of
+     * {@link TextFilterer#filterTextFromImage(String)} and can change
+     * between runs.
+     * @return The description.
+     */
+    public String getVersion() {
+        return dictionaryCorrector.getVersion();
     }
 
     /**
@@ -43,15 +94,7 @@ public class TextFilterer {
      * @return Text after replacing the potential latin letters.
      */
     public String replaceEnglishLettersWithCyrillic(String raw) {
-        raw = raw.replaceAll("B", "в");
-        raw = raw.replaceAll("H", "н");
-        raw = raw.replaceAll("[kK]","к");
-        raw = raw.replaceAll("m", "м");
-        raw = raw.replaceAll("n", "н");
-        raw = raw.replaceAll("[pP]", "р");
-        raw = raw.replaceAll("[xX]", "х");
-        raw = raw.replaceAll("y", "у");
-        return raw;
+        return cyrillicFilter.filter(raw);
     }
 
     /**
@@ -62,7 +105,7 @@ public class TextFilterer {
      * If the word doesn't contain any digits or the whole word is a number, returns
      * false.
      */
-    public boolean doesWordContainDigits(String word) {
+    public boolean doesWordContainDigits(CharSequence word) {
         boolean hasDigit = false, hasChar = false;
         for (int i = 0; i < word.length(); i++) {
             if ('0' <= word.charAt(i) && word.charAt(i) <= '9') hasDigit = true;
@@ -72,17 +115,32 @@ public class TextFilterer {
     }
 
     /**
-     * Takes a whole sentence
-     * @param raw
-     * @return
+     * Replaces the digits 6 and 8 with the letter "в" in words that also
+     * contain other characters, where they're most likely misread letters.
+     * Words are separated by single spaces in the result.
+     * @param raw Original text.
+     * @return Text after the digits are replaced.
      */
     public String replaceDigitsWithCyrillicLetters(String raw) {
-        var words = textUtils.splitTextToWords(raw);
-        var filtered = words.stream().map(x -> {
-            if (!doesWordContainDigits(x)) return x;
-            return x.replaceAll("[68]", "в");
-        }).toList();
-        return textUtils.reconstructTextFromWords(filtered);
+        TokenizedText words = textUtils.tokenize(raw);
+        StringBuilder ret = new StringBuilder(raw.length());
+        for (int i = 0; i < words.size(); i++) {
+            int start = words.start(i), end = words.end(i);
+            while (start < end && raw.charAt(start) <= ' ') start++;
+            while (end > start && raw.charAt(end - 1) <= ' ') end--;
+            if (ret.length() != 0) ret.append(' ');
+            if (!doesWordContainDigits(words.word(i))) {
+                ret.append(raw, start, end);
+                continue;
+            }
+            for (int j = start; j < end; j++) {
+                char c = raw.charAt(j);
+                ret.append(c == '6' || c == '8' ? 'в' : c);
+            }
+        }
+        // left by words made only of whitespace, such as tabs
+        while (ret.length() != 0 && ret.charAt(ret.length() - 1) == ' ') ret.setLength(ret.length() - 1);
+        return ret.toString();
     }
 
     /**
@@ -93,14 +151,6 @@ public class TextFilterer {
      * @return Text after the specified characters are removed.
      */
     public String removeUnusualCharactersFromText(String raw) {
-        raw = raw.replace("©", "");
-        raw = raw.replace("|", "");
-        raw = raw.replace("[", "");
-        raw = raw.replace("]", "");
-        raw = raw.replace("{", "");
-        raw = raw.replace("<", "");
-        raw = raw.replace(">", "");
-        raw = raw.replace("}", "");
-        return raw;
+        return unusualCharactersFilter.filter(raw);
     }
 }
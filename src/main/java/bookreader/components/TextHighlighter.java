@@ -1,15 +1,13 @@
 package bookreader.components;
 
+import bookreader.javafx.views.TextRenderer;
+import bookreader.utils.SentenceIndex;
 import bookreader.utils.TextUtils;
-import javafx.scene.Node;
-import javafx.scene.layout.Background;
-import javafx.scene.layout.StackPane;
-import javafx.scene.text.Font;
-import javafx.scene.text.Text;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -53,15 +51,19 @@ public class TextHighlighter {
     private int seqEnd = -1;
 
     /**
-     * List directly connected to the scene. It contains all words. Every stack
-     * pane contains a single text node with the word.
+     * All loaded words, or null if nothing is loaded.
      */
-    private List<StackPane> words = null;
+    private List<String> words = null;
     /**
-     * List directly connected to the scene. It contains all whitespaces between
-     * each word. Every stack pane contains a single text node with an interval.
+     * Displays the words and the selection, or null if nothing displays
+     * them.
      */
-    private List<StackPane> whitespaceNodes = null;
+    private TextRenderer renderer = null;
+    /**
+     * Sentences of the loaded words, built when they're loaded so moving
+     * between sentences doesn't go through the words again.
+     */
+    private SentenceIndex sentences = null;
 
     // Dependencies
     private final LowVisionSettings lowVisionSettings;
@@ -80,15 +82,61 @@ public class TextHighlighter {
     }
 
     /**
-     * Loads the words from a list to the text highlighter. If not load,
-     * most other methods will throw a null pointer exception.
-     * @param wordsAsNodes Words in an observable list.
-     * @param whitespaceNodes List of whitespace nodes. These appear between every
-     *                        two words. The size of the list should be the size of
+     * Sets what displays the loaded words and the selection.
+     * @param renderer The renderer.
+     */
+    public void setRenderer(TextRenderer renderer) {
+        this.renderer = renderer;
+        if (renderer != null && words != null) {
+            renderer.setWords(words);
+            renderer.setSelection(seqStart, seqEnd);
+        }
+    }
+
+    /**
+     * Loads the words to the text highlighter and displays them. If not
+     * loaded, most other methods will throw a null pointer exception.
+     * Anything selected before is cleared.
+     * @param words Words of the text.
+     */
+    public void load(@NotNull List<String> words) {
+        this.words = new ArrayList<>(words);
+        this.seqStart = this.seqEnd = -1;
+        this.sentences = new SentenceIndex();
+        indexSentences(words);
+        if (renderer != null) renderer.setWords(words);
+    }
+
+    /**
+     * Adds more words to the end of the already loaded ones. Used when a
+     * document is loaded page by page.
+     * @param words Words to add.
+     * @see TextHighlighter#load(List)
+     */
+    public void append(@NotNull List<String> words) {
+        this.words.addAll(words);
+        indexSentences(words);
+        if (renderer != null) renderer.appendWords(words);
+    }
+
+    /**
+     * Removes the loaded words, after which nothing is loaded.
      */
-    public void load(@NotNull List<StackPane> wordsAsNodes, @NotNull List<StackPane> whitespaceNodes) {
-        this.words = wordsAsNodes;
-        this.whitespaceNodes = whitespaceNodes;
+    public void unload() {
+        this.words = null;
+        this.sentences = null;
+        this.seqStart = this.seqEnd = -1;
+        if (renderer != null) renderer.setWords(List.of());
+    }
+
+    /**
+     * Adds words to the sentence index.
+     * @param words Words following the already indexed ones.
+     */
+    private void indexSentences(List<String> words) {
+        for (String word : words) {
+            sentences.addWord(sentenceEndingChars.contains(getActualLastLetter(word)));
+        }
     }
 
     /**
@@ -105,70 +153,39 @@ public class TextHighlighter {
     }
 
     /**
-     * Changes the style of all currently selected words to look as if
-     * they're not selected.
+     * Shows the current selection on the screen.
      */
-    private void unselectCurrent() {
-        if (isNothingSelected()) return;
-        for (int i = seqStart; i <= seqEnd; i++) {
-            Text x = (Text)words.get(i).getChildren().get(0);
-            //System.out.println("Unselected - " + i);
-            x.setFill(lowVisionSettings.getCurrentColorsMain().getValue());
-            words.get(i).setBackground(Background.fill(lowVisionSettings.getCurrentColorsMain().getKey()));
-
-            if (i != seqEnd) {
-                whitespaceNodes.get(i).setBackground(Background.fill(lowVisionSettings.getCurrentColorsMain().getKey()));
-            }
-        }
-    }
-
-    /**
-     * Changes the style of all currently selected words to look as if
-     * they're selected.
-     */
-    private void selectCurrent() {
-        if (isNothingSelected()) return;
-        for (int i = seqStart; i <= seqEnd; i++) {
-            Text x = (Text)words.get(i).getChildren().get(0);
-            //System.out.println("Selected - " + i);
-            x.setFill(lowVisionSettings.getCurrentColorsSpotlight().getValue());
-            words.get(i).setBackground(Background.fill(lowVisionSettings.getCurrentColorsSpotlight().getKey()));
-
-            if (i != seqEnd) {
-                whitespaceNodes.get(i).setBackground(Background.fill(lowVisionSettings.getCurrentColorsSpotlight().getKey()));
-            }
-        }
+    private void showSelection() {
+        if (renderer != null) renderer.setSelection(seqStart, seqEnd);
     }
 
     /**
      * Moves the highlighter to the next word. If nothing was selected before,
      * it only selects the first word. If the end is reached, nothing happens.
-     * @see TextHighlighter#load(List, List)
+     * @see TextHighlighter#load(List)
      * @return True if the current word has changed, false otherwise.
      */
     public boolean selectNextWord() {
         if (seqEnd >= words.size() - 1) return false;
         if (seqEnd < -1) seqEnd = -1;
-        unselectCurrent();
         seqEnd++;
         seqStart = seqEnd;
-        selectCurrent();
+        showSelection();
         return true;
     }
 
     /**
      * Moves the highlighter to the previous word. If there is no
      * previous word, nothing happens.
-     * @see TextHighlighter#load(List, List)
+     * @see TextHighlighter#load(List)
      * @return True if the current word has changed, false otherwise.
      */
     public boolean selectPreviousWord() {
         if (isNothingSelected()) return false;
         if (seqStart <= 0) return false;
-        unselectCurrent();
         seqStart--;
         seqEnd = seqStart;
-        selectCurrent();
+        showSelection();
         return true;
     }
 
@@ -176,45 +193,16 @@ public class TextHighlighter {
      * General method for selecting the word directly above or below the
      * currently selected word.
      * @param direction +1 for Below, -1 for Above
-     * @see TextHighlighter#load(List, List)
+     * @see TextHighlighter#load(List)
      */
     private boolean selectWordAboveOrBelow(int direction) {
-        if (isNothingSelected()) return false;
-
-        var cur = words.get(seqStart);
-        double neededYlvl = -1;
-        int best = -1;
-        double bestDiff = Double.MAX_VALUE;
-
-        // find the next word that is below the current word
-        for (int next = seqEnd + direction; 0 <= next && next < words.size(); next += direction) {
-            // candidate
-            var cand = words.get(next);
-
-            if (cand.getBoundsInParent().getMaxY() == cur.getBoundsInParent().getMaxY()) continue;
-            // record the Y level of the line under
-            if (neededYlvl == -1) neededYlvl = cand.getBoundsInParent().getMaxY();
-            // under next line
-            if (neededYlvl != cand.getBoundsInParent().getMaxY()) break;
-
-            double curDiff = Math.min(
-                    Math.abs(cur.getBoundsInParent().getCenterX() - cand.getBoundsInParent().getMaxX()),
-                    Math.abs(cur.getBoundsInParent().getCenterX() - cand.getBoundsInParent().getMinX())
-            );
-            if (cand.getBoundsInParent().getMinX() <= cur.getBoundsInParent().getCenterX() &&
-                    cur.getBoundsInParent().getCenterX() <= cand.getBoundsInParent().getMaxX()) curDiff = 0;
-
-            if (curDiff < bestDiff) {
-                bestDiff = curDiff;
-                best = next;
-            }
-        }
+        if (isNothingSelected() || renderer == null) return false;
+        int best = renderer.findWordAboveOrBelow(seqStart, direction);
 
         // if no next was found, don't do anything
         if (best == -1) return false;
-        unselectCurrent();
         seqStart = seqEnd = best;
-        selectCurrent();
+        showSelection();
         return true;
     }
 
@@ -222,7 +210,7 @@ public class TextHighlighter {
      * Selects the word directly below the currently selected word. If there
      * isn't one, nothing happens.
      * @return True if the current word has changed, false otherwise.
-     * @see TextHighlighter#load(List, List)
+     * @see TextHighlighter#load(List)
      */
     public boolean selectWordBelow() {
         return selectWordAboveOrBelow(+1);
@@ -232,7 +220,7 @@ public class TextHighlighter {
      * Selects the word directly above the currently selected word. If there
      * isn't one, nothing happens.
      * @return True if the current word has changed, false otherwise.
-     * @see TextHighlighter#load(List, List)
+     * @see TextHighlighter#load(List)
      */
     public boolean selectWordAbove() {
         return selectWordAboveOrBelow(-1);
@@ -243,28 +231,24 @@ public class TextHighlighter {
      * @param index Which word to choose.
      * @return True if the word was successfully chosen i.e. the index was in
      * bounds, false otherwise.
-     * @see TextHighlighter#load(List, List)
+     * @see TextHighlighter#load(List)
      */
     public boolean selectSpecificWord(int index) {
         if (index < 0 || index >= words.size()) return false;
-        unselectCurrent();
         seqStart = seqEnd = index;
-        selectCurrent();
+        showSelection();
         return true;
     }
 
     /**
-     * Gets the actual last character of a word node. That is to say,
-     * the last non-whitespace character in the text.
-     * @param x Node object.
-     * @return The last non-whitespace character if this is a text node,
-     * 0 otherwise. If this is a text node but without any text, 0 is
-     * also returned.
-     * @see TextHighlighter#load(List, List)
+     * Gets the actual last character of a word. That is to say, the last
+     * non-whitespace character in the text.
+     * @param word The word.
+     * @return The last non-whitespace character, or 0 if the word is only
+     * whitespace.
      */
-    private char getActualLastLetter(Node x) {
-        if (!(x instanceof Text t)) return 0;
-        String trimmedText = t.getText().trim();
+    private char getActualLastLetter(String word) {
+        String trimmedText = word.trim();
         if (trimmedText.isEmpty()) return 0;
         return trimmedText.charAt(trimmedText.length() - 1);
     }
@@ -272,35 +256,13 @@ public class TextHighlighter {
     /**
      * Selects the whole sentence containing a given word.
      * @param index Index of the word.
-     * @see TextHighlighter#load(List, List)
+     * @see TextHighlighter#load(List)
      */
     private void selectSentenceContaining(int index) {
-        unselectCurrent();
-        // start from the given word
-        seqEnd = index;
-        // find the nearest word that ends a sentence
-        while (!sentenceEndingChars.contains(getActualLastLetter(words.get(seqEnd).getChildren().get(0)))) {
-            if (seqEnd == words.size() - 1) break;
-            seqEnd++;
-        }
-        if (seqEnd == 0) {
-            seqStart = 0;
-            selectCurrent();
-            return;
-        }
-
-        // go backwards and find the previous end of a sentence, or the beginning of the text
-        seqStart = seqEnd - 1;
-        while (!sentenceEndingChars.contains(getActualLastLetter(words.get(seqStart).getChildren().get(0)))) {
-            if (seqStart == 0) break;
-            seqStart--;
-        }
-
-        if (seqStart == 0 && !sentenceEndingChars.contains(getActualLastLetter(words.get(0).getChildren().get(0)))) {
-            seqStart--;
-        }
-        seqStart++;
-        selectCurrent();
+        int sentence = sentences.sentenceOf(index);
+        seqStart = sentences.firstWord(sentence);
+        seqEnd = sentences.lastWord(sentence);
+        showSelection();
     }
 
     /**
@@ -308,7 +270,7 @@ public class TextHighlighter {
      * @return True if a new sentence was successfully selected, false
      * otherwise. False is only returned if we've reached the end of the
      * text.
-     * @see TextHighlighter#load(List, List)
+     * @see TextHighlighter#load(List)
      */
     public boolean selectNextSentence() {
         if (seqEnd >= words.size() - 1) return false;
@@ -322,7 +284,7 @@ public class TextHighlighter {
      * @return True if a new sentence was successfully selected, false
      * otherwise. False is only returned if we've reached the beginning
      * of the text.
-     * @see TextHighlighter#load(List, List)
+     * @see TextHighlighter#load(List)
      */
     public boolean selectPreviousSentence() {
         if (seqStart <= 0) return false;
@@ -335,33 +297,8 @@ public class TextHighlighter {
      * the low vision settings.
      */
     public void refreshLowVisionSettings() {
-        Font fontWords = lowVisionSettings.getWordFont();
-        Font fontSpacings = lowVisionSettings.getSpacingFont();
-
-        for (int i = 0; i < words.size(); i++) {
-            Text x = (Text)words.get(i).getChildren().get(0);
-            x.setFont(fontWords);
-
-            if (seqStart <= i && i <= seqEnd) {
-                x.setFill(lowVisionSettings.getCurrentColorsSpotlight().getValue());
-                words.get(i).setBackground(Background.fill(lowVisionSettings.getCurrentColorsSpotlight().getKey()));
-
-                if (i != seqEnd) {
-                    whitespaceNodes.get(i).setBackground(Background.fill(lowVisionSettings.getCurrentColorsSpotlight().getKey()));
-                } else {
-                    whitespaceNodes.get(i).setBackground(Background.fill(lowVisionSettings.getCurrentColorsMain().getKey()));
-                }
-            } else {
-                x.setFill(lowVisionSettings.getCurrentColorsMain().getValue());
-                words.get(i).setBackground(Background.fill(lowVisionSettings.getCurrentColorsMain().getKey()));
-                whitespaceNodes.get(i).setBackground(Background.fill(lowVisionSettings.getCurrentColorsMain().getKey()));
-            }
-
-            if (i != words.size() - 2) {
-                var spacing = (Text)whitespaceNodes.get(i).getChildren().get(0);
-                spacing.setFont(fontSpacings);
-            }
-        }
+        if (renderer == null) return;
+        renderer.setAppearance(lowVisionSettings.getTextStyle());
     }
 
     /**
@@ -374,7 +311,7 @@ public class TextHighlighter {
         if (isNothingSelected()) return "";
         StringBuilder ret = new StringBuilder();
         for (int i = seqStart; i <= seqEnd; i++) {
-            ret.append(((Text)(words.get(i).getChildren().get(0))).getText());
+            ret.append(words.get(i));
             ret.append(" ");
         }
         return ret.toString().trim();
@@ -392,11 +329,11 @@ public class TextHighlighter {
 
     /**
      * Clears anything currently selected.
-     * @see TextHighlighter#load(List, List) 
+     * @see TextHighlighter#load(List) 
      */
     public void clearSelection() {
-        unselectCurrent();
         this.seqStart = this.seqEnd = -1;
+        showSelection();
     }
 
     /**
@@ -417,6 +354,14 @@ public class TextHighlighter {
         return this.seqEnd;
     }
 
+    /**
+     * Gets how many words are loaded.
+     * @return Amount of words, or 0 if nothing is loaded.
+     */
+    public int getWordCount() {
+        return this.words == null ? 0 : this.words.size();
+    }
+
     /**
      * Gets the word at the given index.
      * @param index Index
@@ -424,6 +369,6 @@ public class TextHighlighter {
      */
     public String getWordAt(int index) {
         if (index < 0 || index >= this.words.size()) return null;
-        return ((Text)this.words.get(index).getChildren().get(0)).getText();
+        return this.words.get(index);
     }
 }
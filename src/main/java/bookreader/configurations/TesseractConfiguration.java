@@ -1,8 +1,6 @@
 package bookreader.configurations;
 
 import net.sourceforge.tess4j.TessAPI;
-import net.sourceforge.tess4j.TessAPI1;
-import net.sourceforge.tess4j.Tesseract;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -10,14 +8,11 @@ import org.springframework.context.annotation.Configuration;
 public class TesseractConfiguration {
 
     /**
-     * Configuration for the tesseract object to be available as a spring bean.
-     * @return A new tesseract instance.
+     * Tesseract engines themselves are not beans, because a single instance
+     * is not thread-safe. They are borrowed from the
+     * {@link bookreader.components.NativeTesseractPool} instead.
+     * @return The native Tesseract API.
      */
-    @Bean
-    public Tesseract tesseract() {
-        return new Tesseract();
-    }
-
     @Bean
     public TessAPI tessAPI() {
         return TessAPI.INSTANCE;
@@ -13,6 +13,7 @@ import javafx.scene.image.ImageView;
 import javafx.util.Callback;
 import net.rgielen.fxweaver.core.FxmlView;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import java.awt.*;
@@ -21,6 +22,7 @@ import java.net.URL;
 import java.util.ResourceBundle;
 
 @Component
+@Profile("!batch & !tune")
 @FxmlView("CameraMenu.fxml")
 public class CameraMenuController implements Initializable {
 
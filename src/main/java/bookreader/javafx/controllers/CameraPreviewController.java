@@ -7,10 +7,12 @@ import javafx.fxml.FXML;
 import javafx.scene.image.ImageView;
 import net.rgielen.fxweaver.core.FxmlView;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 
 @Component
+@Profile("!batch & !tune")
 @FxmlView("CameraPreview.fxml")
 public class CameraPreviewController {
 
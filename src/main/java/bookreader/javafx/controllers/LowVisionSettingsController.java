@@ -3,9 +3,11 @@ package bookreader.javafx.controllers;
 import bookreader.components.LowVisionSettings;
 import net.rgielen.fxweaver.core.FxmlView;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 @Component
+@Profile("!batch & !tune")
 @FxmlView("LowVisionSettings.fxml")
 public class LowVisionSettingsController {
 
@@ -2,25 +2,19 @@ package bookreader.javafx.controllers;
 
 import bookreader.components.*;
 import bookreader.javafx.JavaFxApplication;
+import bookreader.javafx.views.CanvasTextView;
+import bookreader.javafx.views.TextRenderer;
+import bookreader.javafx.views.VirtualTextView;
 import bookreader.utils.TextUtils;
 import javafx.application.Platform;
-import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.TextField;
-import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
-import javafx.scene.layout.Background;
-import javafx.scene.layout.BackgroundFill;
 import javafx.scene.layout.StackPane;
-import javafx.scene.media.Media;
-import javafx.scene.media.MediaPlayer;
-import javafx.scene.text.Font;
-import javafx.scene.text.Text;
-import javafx.scene.text.TextFlow;
 import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
@@ -30,7 +24,9 @@ import org.opencv.core.Mat;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import javax.imageio.ImageIO;
@@ -41,18 +37,26 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Component
+@Profile("!batch & !tune")
 @FxmlView("MainScreen.fxml")
 public class MainScreenController implements Initializable {
 
+    /**
+     * Status shown while the OCR models are being loaded.
+     */
+    private static final String PREPARING_TEXT = "Подготовка...";
+
     /**
      * Main area where the read text is displayed.
      */
     @FXML
-    private TextFlow mainTextWrapper;
+    private StackPane mainTextContainer;
     /**
      * The menu bar at the top of the screen that displays options.
      */
@@ -64,6 +68,17 @@ public class MainScreenController implements Initializable {
     @FXML
     private TextField loadingText;
 
+    /**
+     * Counts how many documents have been opened or closed. Pages that arrive
+     * for a document that is no longer open are ignored.
+     */
+    private int openedDocuments = 0;
+    /**
+     * Which view displays the text: "nodes" for {@link VirtualTextView} or
+     * "canvas" for {@link CanvasTextView}.
+     */
+    private final String textRendererType;
+
     // Dependencies
     private final OCR ocr;
     private final FileProcesser fileProcesser;
@@ -74,6 +89,7 @@ public class MainScreenController implements Initializable {
     private final TextUtils textUtils;
     private final KeyInputProcesser keyInputProcesser;
     private final ScanningCamera scanningCamera;
+    private final OpenCVLoader openCVLoader;
 
     /**
      * Dependencies of the constructor.
@@ -88,7 +104,9 @@ public class MainScreenController implements Initializable {
             ApplicationContext applicationContext,
             TextUtils textUtils,
             KeyInputProcesser keyInputProcesser,
-            ScanningCamera scanningCamera)
+            ScanningCamera scanningCamera,
+            OpenCVLoader openCVLoader,
+            @Value("${ui.text-renderer:nodes}") String textRendererType)
     {
         this.ocr = ocr;
         this.fileProcesser = fileProcesser;
@@ -99,6 +117,8 @@ public class MainScreenController implements Initializable {
         this.textUtils = textUtils;
         this.keyInputProcesser = keyInputProcesser;
         this.scanningCamera = scanningCamera;
+        this.openCVLoader = openCVLoader;
+        this.textRendererType = textRendererType;
     }
 
     /**
@@ -119,6 +139,31 @@ public class MainScreenController implements Initializable {
         // Add an event filter for key presses related to navigating the selected text.
         JavaFxApplication.getPrimaryStage()
                 .addEventFilter(KeyEvent.KEY_PRESSED, keyInputProcesser);
+
+        TextRenderer renderer = createTextRenderer();
+        mainTextContainer.getChildren().setAll(renderer.getNode());
+        renderer.setOnWordClicked(tts::readSpecificWord);
+        textHighlighter.setRenderer(renderer);
+        refreshLowVisionSettings();
+
+        // The models are loaded in the background, the first picture is only
+        // fast once they're ready.
+        loadingText.setText(PREPARING_TEXT);
+        ocr.getReady().thenRun(() -> Platform.runLater(() -> {
+            if (loadingText.getText().equals(PREPARING_TEXT)) loadingText.setText("Готово");
+        }));
+    }
+
+    /**
+     * Creates the view chosen with the ui.text-renderer property.
+     * @return The view.
+     */
+    private TextRenderer createTextRenderer() {
+        if (textRendererType.equalsIgnoreCase("canvas")) return new CanvasTextView();
+        if (!textRendererType.equalsIgnoreCase("nodes")) {
+            System.out.println("Unknown text renderer " + textRendererType + ", using nodes");
+        }
+        return new VirtualTextView();
     }
 
     /**
@@ -135,18 +180,16 @@ public class MainScreenController implements Initializable {
         File selectedFile = fc.showOpenDialog(JavaFxApplication.getPrimaryStage());
         if (selectedFile == null) return;
         loadingText.setText("Зареждане...");
+        int documentId = openedDocuments;
         new Thread(() -> {
             try {
-                String output = fileProcesser.processFile(selectedFile);
-                if (output.isEmpty()) {
-                    loadingText.setText("");
+                AtomicBoolean firstPart = new AtomicBoolean(true);
+                String output = fileProcesser.processFile(selectedFile,
+                        (pageIndex, text) -> showTextPart(documentId, firstPart, text));
+                if (output == null || output.isEmpty()) {
+                    Platform.runLater(() -> loadingText.setText(""));
                     return;
                 }
-
-                //mainTextArea.setText(output);
-                Platform.runLater(() -> {
-                    transformTextToNodes(output);
-                });
                 //System.out.println(output);
                 //tts.testPythonReadText(output);
 //                try {
@@ -164,48 +207,34 @@ public class MainScreenController implements Initializable {
     }
 
     /**
-     * Transforms a string into words that are then displayed into individual
-     * nodes inside the TextFlow object.
-     * @param text Text to transform.
+     * Displays a part of a text that is loaded in parts, such as a page of
+     * a document or a line of a picture. The first part replaces whatever
+     * was displayed before and the rest are added after it.
+     * @param documentId Value of {@link MainScreenController#openedDocuments}
+     *                   when the text started loading.
+     * @param firstPart Whether no part of the text has been displayed yet.
+     * @param text Text of the part.
      */
-    private void transformTextToNodes(String text) {
+    private void showTextPart(int documentId, AtomicBoolean firstPart, String text) {
+        if (text.isEmpty()) return;
+        boolean first = firstPart.getAndSet(false);
+        Platform.runLater(() -> {
+            // the text was closed while it was still loading
+            if (documentId != openedDocuments) return;
+            if (first) displayText(text);
+            else appendText(text);
+        });
+    }
+
+    /**
+     * Splits a string into words and displays them, replacing whatever was
+     * displayed before.
+     * @param text Text to display.
+     */
+    private void displayText(String text) {
         List<String> words = textUtils.splitTextToWords(text);
-        mainTextWrapper.getChildren().clear(); // clear current words
-        var children = mainTextWrapper.getChildren();
-        // create lists where to put the words and the empty spaces
-        List<StackPane> actualWords = new ArrayList<>();
-        List<StackPane> whitespaces = new ArrayList<>();
-        // preload fonts
-        Font fontWords = lowVisionSettings.getWordFont();
-        Font fontSpacing = lowVisionSettings.getSpacingFont();
-        int curIndex = 0;
-        for (var word : words) {
-            // create the text node for the word
-            var textNode = new Text(word);
-            int finalCurIndex = curIndex;
-            textNode.setOnMouseClicked(event -> {
-                //textHighlighter.selectSpecificWord(finalCurIndex);
-                tts.readSpecificWord(finalCurIndex);
-            });
-            textNode.setFont(fontWords);
-            // wrap the text node in a stack pane so that you can change the background color
-            var nodeWrapperText = new StackPane();
-            nodeWrapperText.getChildren().add(textNode);
-            children.add(nodeWrapperText);
-            actualWords.add(nodeWrapperText);
-
-            // separate the intervals and the actual words
-            var spaceNode = new Text(" ");
-            spaceNode.setFont(fontSpacing);
-            var nodeWrapperScape = new StackPane();
-            nodeWrapperScape.getChildren().add(spaceNode);
-            children.add(nodeWrapperScape);
-            whitespaces.add(nodeWrapperScape);
-            curIndex++;
-        }
-        this.textHighlighter.load(actualWords, whitespaces);
+        this.textHighlighter.load(words);
         this.tts.setLanguage(textUtils.getLanguage(text));
-        this.refreshLowVisionSettings();
         this.tts.loadSounds(words);
         try {
             Thread.sleep(750);
@@ -215,6 +244,69 @@ public class MainScreenController implements Initializable {
         new Thread(this.tts::readFromStart).start();
     }
 
+    /**
+     * Adds the words of a string after the words already displayed. Used
+     * for the pages of a document that is still being loaded.
+     * @param text Text to add.
+     */
+    private void appendText(String text) {
+        List<String> words = textUtils.splitTextToWords(text);
+        this.textHighlighter.append(words);
+        this.tts.appendSounds(words);
+    }
+
+    /**
+     * Replaces the displayed words with a refined version of the same text,
+     * such as the full quality recognition of a draft. The two versions are
+     * aligned word by word, so the selected word and the reading position
+     * move to the word they became, and only the sounds of changed words are
+     * loaded again.
+     * @param text The refined text.
+     */
+    private void refineText(String text) {
+        List<String> oldWords = new ArrayList<>();
+        for (int i = 0; i < textHighlighter.getWordCount(); i++) {
+            oldWords.add(textHighlighter.getWordAt(i));
+        }
+        List<String> words = textUtils.splitTextToWords(text);
+        int[] mapping = textUtils.alignWords(oldWords, words);
+
+        boolean reading = tts.isReading();
+        int position = textHighlighter.getSelectionStart();
+        tts.stopCurrentRead();
+        textHighlighter.clearSelection();
+
+        this.textHighlighter.load(words);
+
+        // sounds can only be kept for words that didn't change
+        int[] reusedFrom = new int[words.size()];
+        Arrays.fill(reusedFrom, -1);
+        String language = textUtils.getLanguage(text);
+        if (language.equals(tts.getLanguage())) {
+            for (int i = 0; i < mapping.length; i++) {
+                if (mapping[i] != -1 && oldWords.get(i).equals(words.get(mapping[i]))) reusedFrom[mapping[i]] = i;
+            }
+        }
+        tts.setLanguage(language);
+        tts.replaceSounds(words, reusedFrom);
+
+        if (position < 0 || words.isEmpty()) return;
+        // the first word after the old position that still exists
+        int newPosition = words.size() - 1;
+        for (int i = position; i < mapping.length; i++) {
+            if (mapping[i] != -1) {
+                newPosition = mapping[i];
+                break;
+            }
+        }
+        if (reading) {
+            int start = newPosition;
+            new Thread(() -> tts.readFrom(start)).start();
+        } else {
+            textHighlighter.selectSpecificWord(newPosition);
+        }
+    }
+
     /**
      * Gets the scene object of the scene.
      * @return Scene.
@@ -243,35 +335,46 @@ public class MainScreenController implements Initializable {
      * the low vision settings.
      */
     public void refreshLowVisionSettings() {
-        mainTextWrapper.setBackground(Background.fill(
-                lowVisionSettings.getCurrentColorsMain().getKey()));
-
-        if (textHighlighter.isLoaded()) {
-            textHighlighter.refreshLowVisionSettings();
-        }
+        textHighlighter.refreshLowVisionSettings();
     }
 
     public void closeFile() {
-        mainTextWrapper.getChildren().clear();
+        openedDocuments++;
         tts.stopCurrentRead();
+        tts.disposeOfAudioFiles();
+        textHighlighter.unload();
         tts.setLanguage(null);
     }
 
     public void loadTextFromCameraPicture() {
+        closeFile();
         loadingText.setText("Зареждане...");
+        int documentId = openedDocuments;
 
         new Thread(() -> {
             BufferedImage img = scanningCamera.takePicture();
-            String output = ocr.processImage(img);
+            AtomicBoolean firstPart = new AtomicBoolean(true);
+            String output = ocr.processImageProgressively(img, new OCR.ProgressListener() {
+                @Override
+                public void draftLineRecognised(int lineIndex, String text) {
+                    showTextPart(documentId, firstPart, text);
+                }
+
+                @Override
+                public void refinedRecognised(String text) {
+                    if (text.isEmpty()) return;
+                    boolean first = firstPart.getAndSet(false);
+                    Platform.runLater(() -> {
+                        if (documentId != openedDocuments) return;
+                        if (first) displayText(text);
+                        else refineText(text);
+                    });
+                }
+            });
             if (output == null || output.isEmpty()) {
-                loadingText.setText("");
+                Platform.runLater(() -> loadingText.setText(""));
                 return;
             }
-
-            //mainTextArea.setText(output);
-            Platform.runLater(() -> {
-                transformTextToNodes(output);
-            });
             //System.out.println(output);
             //tts.testPythonReadText(output);
 //                try {
@@ -286,6 +389,7 @@ public class MainScreenController implements Initializable {
     }
 
     public void testGrayscale() {
+        openCVLoader.awaitLoaded();
         Mat src = Imgcodecs.imread("test_images/tarator.png");
         //Creating the empty destination matrix
         Mat dst = new Mat();
@@ -21,6 +21,7 @@ import javafx.util.Duration;
 import net.rgielen.fxweaver.core.FxmlView;
 import net.sourceforge.tess4j.Tesseract;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import java.awt.image.BufferedImage;
@@ -31,6 +32,7 @@ import java.util.Arrays;
 import java.util.ResourceBundle;
 
 @Component
+@Profile("!batch & !tune")
 @FxmlView("MotionCapture.fxml")
 public class MotionDetectionController implements Initializable {
 
@@ -6,11 +6,13 @@ import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.image.ImageView;
 import net.rgielen.fxweaver.core.FxmlView;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import java.awt.image.BufferedImage;
 
 @Component
+@Profile("!batch & !tune")
 @FxmlView("Screenshot.fxml")
 public class ScreenshotController {
 
@@ -0,0 +1,112 @@
+package bookreader.javafx.views;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * Draws a text on a single canvas the size of the visible area, instead of
+ * using a node per word. The selection is drawn as a rectangle behind the
+ * selected words, so moving it only draws the words that were selected or
+ * became selected again, and nothing in the scene graph has to be styled
+ * or laid out.
+ */
+public class CanvasTextView extends ScrollingTextView {
+
+    private final Canvas canvas = new Canvas();
+
+    public CanvasTextView() {
+        content.getChildren().add(canvas);
+    }
+
+    @Override
+    protected void clearView() {
+        canvas.getGraphicsContext2D().clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+    }
+
+    /**
+     * Draws all visible words.
+     */
+    @Override
+    protected void updateView() {
+        if (canvas.getWidth() != content.getWidth()) canvas.setWidth(content.getWidth());
+        if (canvas.getHeight() != content.getHeight()) canvas.setHeight(content.getHeight());
+        clearView();
+        if (layout == null) return;
+        GraphicsContext gc = prepareGraphics();
+        int firstLine = getFirstVisibleLine(0), lastLine = getLastVisibleLine(0);
+        if (firstLine > lastLine) return;
+        for (int i = layout.getFirstWordOfLine(firstLine); i <= layout.getLastWordOfLine(lastLine); i++) {
+            drawWord(gc, i);
+        }
+    }
+
+    /**
+     * Draws again only the visible words that entered or left the
+     * selection, or whose highlighted space changed.
+     */
+    @Override
+    protected void updateSelection(int oldStart, int oldEnd) {
+        int firstLine = getFirstVisibleLine(0), lastLine = getLastVisibleLine(0);
+        if (firstLine > lastLine) return;
+        int first = layout.getFirstWordOfLine(firstLine), last = layout.getLastWordOfLine(lastLine);
+        GraphicsContext gc = prepareGraphics();
+        redrawRange(gc, oldStart, oldEnd, first, last, oldStart, oldEnd);
+        redrawRange(gc, selectionStart, selectionEnd, first, last, oldStart, oldEnd);
+    }
+
+    private void redrawRange(GraphicsContext gc, int start, int end, int firstVisible, int lastVisible,
+                             int oldStart, int oldEnd) {
+        if (start == -1) return;
+        for (int i = Math.max(start, firstVisible); i <= Math.min(end, lastVisible); i++) {
+            if (!isSelectionChanged(i, oldStart, oldEnd)) continue;
+            gc.clearRect(getWordLeft(i), getWordTop(i), getWordRight(i) - getWordLeft(i), layout.getLineHeight());
+            drawWord(gc, i);
+        }
+    }
+
+    private GraphicsContext prepareGraphics() {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.setFont(layout.getWordFont());
+        gc.setTextAlign(TextAlignment.LEFT);
+        gc.setTextBaseline(VPos.CENTER);
+        return gc;
+    }
+
+    /**
+     * Draws a word and, if it's selected, the rectangle behind it. Nothing
+     * is drawn outside the area of the word and the space after it.
+     */
+    private void drawWord(GraphicsContext gc, int index) {
+        double left = getWordLeft(index), top = getWordTop(index), lineHeight = layout.getLineHeight();
+        boolean selected = isSelected(index);
+        gc.save();
+        gc.beginPath();
+        gc.rect(left, top, getWordRight(index) - left, lineHeight);
+        gc.clip();
+        if (selected) {
+            double width = layout.getWordWidth(index) + (isConnectedToNext(index) ? layout.getSpaceWidth() : 0);
+            gc.setFill(style.spotlightBackground());
+            gc.fillRect(left, top, width, lineHeight);
+        }
+        gc.setFill(selected ? style.spotlightText() : style.text());
+        gc.fillText(words.get(index), left, top + lineHeight / 2);
+        gc.restore();
+    }
+
+    private double getWordLeft(int index) {
+        return PADDING + layout.getWordX(index);
+    }
+
+    /**
+     * @return Right edge of the space after the word.
+     */
+    private double getWordRight(int index) {
+        return getWordLeft(index) + layout.getWordWidth(index) + layout.getSpaceWidth();
+    }
+
+    private double getWordTop(int index) {
+        return getTextTop() + layout.getLineY(layout.getLineOfWord(index));
+    }
+}
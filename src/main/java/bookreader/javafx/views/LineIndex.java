@@ -0,0 +1,155 @@
+package bookreader.javafx.views;
+
+import java.util.Arrays;
+
+/**
+ * Finds lines and words by their position in a laid out text. Every line
+ * has a top and a bottom, and the words of a line are stored by their
+ * horizontal centers, which grow from left to right. Finding the line at a
+ * height, the word at a point or the word closest to a horizontal position
+ * are binary searches.
+ */
+public class LineIndex {
+
+    /**
+     * Top of every line, followed by the bottom of the last line.
+     */
+    private final double[] lineTops;
+    /**
+     * Index of the first word of every line, followed by the amount of
+     * words.
+     */
+    private final int[] lineStarts;
+    private final int lineCount;
+    private final double[] wordMinXs;
+    private final double[] wordMaxXs;
+    /**
+     * Horizontal center of every word. Within a line they are sorted.
+     */
+    private final double[] wordCenters;
+
+    /**
+     * Creates the index of a text broken into lines.
+     * @param lineStarts Index of the first word of every line. Only the
+     *                   first lineCount values are used.
+     * @param lineCount Amount of lines.
+     * @param lineTops Top of every line, followed by the bottom of the last
+     *                 line, so it has lineCount + 1 values.
+     * @param wordXs Left edge of every word.
+     * @param wordWidths Width of every word.
+     * @param wordCount Amount of words.
+     */
+    public LineIndex(int[] lineStarts, int lineCount, double[] lineTops,
+                     double[] wordXs, double[] wordWidths, int wordCount) {
+        this.lineCount = lineCount;
+        this.lineTops = lineTops;
+        this.lineStarts = Arrays.copyOf(lineStarts, lineCount + 1);
+        this.lineStarts[lineCount] = wordCount;
+        this.wordMinXs = wordXs;
+        this.wordMaxXs = new double[wordCount];
+        this.wordCenters = new double[wordCount];
+        for (int i = 0; i < wordCount; i++) {
+            wordMaxXs[i] = wordXs[i] + wordWidths[i];
+            wordCenters[i] = wordXs[i] + wordWidths[i] / 2;
+        }
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public double getLineTop(int line) {
+        return lineTops[line];
+    }
+
+    public double getLineBottom(int line) {
+        return lineTops[line + 1];
+    }
+
+    public int getFirstWordOfLine(int line) {
+        return lineStarts[line];
+    }
+
+    public int getLastWordOfLine(int line) {
+        return lineStarts[line + 1] - 1;
+    }
+
+    /**
+     * Finds the line at a height.
+     * @param y The height.
+     * @return Index of the line, or -1 if it's above the first line or
+     * below the last one.
+     */
+    public int findLineAt(double y) {
+        if (lineCount == 0 || y < lineTops[0] || y >= lineTops[lineCount]) return -1;
+        int pos = Arrays.binarySearch(lineTops, 0, lineCount + 1, y);
+        // the top of a line belongs to it, otherwise it's the line starting above the height
+        return pos >= 0 ? pos : -pos - 2;
+    }
+
+    /**
+     * Finds the line at a height, or the closest one if the height is
+     * outside of the text.
+     * @param y The height.
+     * @return Index of the line, or -1 if there are no lines.
+     */
+    public int findClosestLine(double y) {
+        if (lineCount == 0) return -1;
+        if (y < lineTops[0]) return 0;
+        if (y >= lineTops[lineCount]) return lineCount - 1;
+        return findLineAt(y);
+    }
+
+    /**
+     * Finds the word at a point.
+     * @param x Horizontal position.
+     * @param y Vertical position.
+     * @return Index of the word, or -1 if there is no word there.
+     */
+    public int findWordAt(double x, double y) {
+        int line = findLineAt(y);
+        if (line == -1) return -1;
+        int word = findClosestWordInLine(line, x);
+        return wordMinXs[word] <= x && x <= wordMaxXs[word] ? word : -1;
+    }
+
+    /**
+     * Finds the word of a line closest to a horizontal position. A word
+     * that contains the position is the closest one, otherwise the
+     * distance is measured to the nearest edge of a word.
+     * @param line Index of the line.
+     * @param x Horizontal position.
+     * @return Index of the word.
+     */
+    public int findClosestWordInLine(int line, double x) {
+        int first = lineStarts[line], last = lineStarts[line + 1] - 1;
+        int pos = Arrays.binarySearch(wordCenters, first, last + 1, x);
+        if (pos >= 0) return pos;
+        // the words whose centers are just left and right of the position
+        int right = -pos - 1, left = right - 1;
+        if (left < first) return right;
+        if (right > last) return left;
+        return distanceTo(left, x) <= distanceTo(right, x) ? left : right;
+    }
+
+    /**
+     * Finds the word directly above or below a given word, the one on the
+     * next line closest to its center.
+     * @param index Index of the word.
+     * @param line Index of the line of the word.
+     * @param direction +1 for below, -1 for above.
+     * @return Index of the found word, or -1 if there is no line in that
+     * direction.
+     */
+    public int findWordAboveOrBelow(int index, int line, int direction) {
+        int next = line + direction;
+        if (next < 0 || next >= lineCount) return -1;
+        return findClosestWordInLine(next, wordCenters[index]);
+    }
+
+    private double distanceTo(int word, double x) {
+        if (x < wordMinXs[word]) return wordMinXs[word] - x;
+        if (x > wordMaxXs[word]) return x - wordMaxXs[word];
+        return 0;
+    }
+}
@@ -0,0 +1,360 @@
+package bookreader.javafx.views;
+
+import bookreader.models.TextStyle;
+import javafx.application.Platform;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.text.Font;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntConsumer;
+
+/**
+ * Base of the views that display a text laid out by a {@link TextLayout}
+ * with a vertical scroll bar. It keeps the words, the layout, the
+ * appearance and the selection, and answers clicks and the word above or
+ * below lookups. Subclasses only draw the visible part of the text.
+ *
+ * When the fonts change, the text is laid out again on a background thread
+ * while the old layout stays on the screen. The new layout carries its own
+ * fonts, so the new fonts and positions appear together once it's ready,
+ * and only the visible words are drawn with them right away. New texts are
+ * laid out on the same thread, so measuring a whole book doesn't freeze
+ * the window, and the view stays empty until their layout is ready.
+ */
+public abstract class ScrollingTextView extends Region implements TextRenderer {
+
+    /**
+     * Space between the text and the edges of the view.
+     */
+    protected static final double PADDING = 20;
+    /**
+     * Style used until another one is set.
+     */
+    private static final TextStyle DEFAULT_STYLE = new TextStyle(Font.font("System", 48), Font.font("System", 48),
+            Color.WHITE, Color.BLACK, Color.YELLOW, Color.RED);
+    /**
+     * Thread that lays out new texts and texts whose fonts changed. Only the
+     * newest request of a view is used, so one thread is enough.
+     */
+    private static final ExecutorService LAYOUT_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "text-layout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Area left of the scroll bar where the text is drawn.
+     */
+    protected final Pane content = new Pane();
+    private final Rectangle clip = new Rectangle();
+    private final ScrollBar scrollBar = new ScrollBar();
+
+    protected final List<String> words = new ArrayList<>();
+    /**
+     * Positions of the words, or null while they are being computed for a
+     * new text.
+     */
+    protected TextLayout layout = null;
+    /**
+     * Increased whenever a layout that is being computed in the background
+     * becomes outdated, so that it's thrown away when it's done.
+     */
+    private int layoutGeneration = 0;
+    /**
+     * Value of {@link ScrollingTextView#layoutGeneration} when the first
+     * layout of the current words was last requested, so that every layout
+     * pass until it's ready doesn't request it again.
+     */
+    private int requestedGeneration = -1;
+    /**
+     * Word whose line is scrolled to the top after the next layout pass, or
+     * -1 to keep the scroll position.
+     */
+    private int anchorWord = -1;
+
+    protected TextStyle style = DEFAULT_STYLE;
+
+    protected int selectionStart = -1;
+    protected int selectionEnd = -1;
+    private IntConsumer onWordClicked = null;
+
+    protected ScrollingTextView() {
+        content.setClip(clip);
+        content.setOnMouseClicked(event -> {
+            int index = findWordAt(event.getX(), event.getY());
+            if (index != -1 && onWordClicked != null) onWordClicked.accept(index);
+        });
+        scrollBar.setOrientation(Orientation.VERTICAL);
+        scrollBar.setFocusTraversable(false);
+        scrollBar.valueProperty().addListener((observable, oldValue, newValue) -> updateView());
+        setOnScroll(event -> scrollTo(scrollBar.getValue() - event.getDeltaY()));
+        getChildren().addAll(content, scrollBar);
+    }
+
+    /**
+     * Draws the visible part of the text again, after it was scrolled,
+     * resized or laid out again, or its appearance changed.
+     */
+    protected abstract void updateView();
+
+    /**
+     * Draws the words whose selection changed. Only called when the
+     * visible part of the text didn't change otherwise.
+     * @param oldStart Index of the first word selected before, or -1.
+     * @param oldEnd Index of the last word selected before, or -1.
+     */
+    protected abstract void updateSelection(int oldStart, int oldEnd);
+
+    /**
+     * Forgets everything drawn for the previous words.
+     */
+    protected abstract void clearView();
+
+    /**
+     * Checks whether the way a word is drawn depends on a change of the
+     * selection: either it entered or left the selection, or it's at
+     * either end of it, where the space after it stops or starts being
+     * highlighted.
+     * @param index Index of the word.
+     * @param oldStart Index of the first word selected before, or -1.
+     * @param oldEnd Index of the last word selected before, or -1.
+     * @return True if the word has to be drawn again, false otherwise.
+     */
+    protected boolean isSelectionChanged(int index, int oldStart, int oldEnd) {
+        boolean wasSelected = oldStart <= index && index <= oldEnd;
+        return wasSelected != isSelected(index) || index == oldEnd || index == selectionEnd;
+    }
+
+    @Override
+    public Node getNode() {
+        return this;
+    }
+
+    @Override
+    public void setWords(List<String> words) {
+        this.words.clear();
+        this.words.addAll(words);
+        this.layout = null;
+        this.layoutGeneration++;
+        this.anchorWord = -1;
+        this.selectionStart = this.selectionEnd = -1;
+        clearView();
+        scrollBar.setValue(0);
+        requestLayout();
+    }
+
+    @Override
+    public void appendWords(List<String> words) {
+        this.words.addAll(words);
+        if (layout != null) layout = layout.append(words);
+        requestLayout();
+    }
+
+    @Override
+    public void setSelection(int start, int end) {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> setSelection(start, end));
+            return;
+        }
+        int oldStart = selectionStart, oldEnd = selectionEnd;
+        this.selectionStart = start;
+        this.selectionEnd = end;
+        if (layout == null) return;
+        double offset = scrollBar.getValue();
+        if (start != -1 && start < layout.getWordCount()) scrollToLine(layout.getLineOfWord(start));
+        // scrolling already drew everything again
+        if (offset == scrollBar.getValue()) updateSelection(oldStart, oldEnd);
+    }
+
+    @Override
+    public void setAppearance(TextStyle style) {
+        if (style == this.style) return;
+        this.style = style;
+        // a layout being computed for the previous style must not replace the current one
+        this.layoutGeneration++;
+        setBackground(Background.fill(style.background()));
+        if (layout == null) {
+            requestLayout();
+            return;
+        }
+        // the colors are shown right away, the fonts once the text is laid out with them
+        updateView();
+        if (!layout.hasFonts(style.wordFont(), style.spacingFont())) relayoutInBackground(layout.getWidth());
+    }
+
+    /**
+     * Lays out the current words with the fonts of the current style on the
+     * layout thread, then replaces the layout on the FX thread.
+     * @param width Width of the lines.
+     */
+    private void relayoutInBackground(double width) {
+        int generation = layoutGeneration;
+        List<String> snapshot = List.copyOf(words);
+        TextStyle target = style;
+        CompletableFuture.supplyAsync(
+                () -> TextLayout.compute(snapshot, target.wordFont(), target.spacingFont(), width),
+                LAYOUT_EXECUTOR
+        ).whenComplete((result, e) -> {
+            if (e != null) {
+                e.printStackTrace();
+                return;
+            }
+            Platform.runLater(() -> commitLayout(generation, result));
+        });
+    }
+
+    /**
+     * Replaces the layout with one computed in the background, unless it's
+     * outdated or wasn't made with the fonts of the current style. The line
+     * that was at the top of the screen, or the one with the selection,
+     * stays at the top. The first layout of a text scrolls to the selection,
+     * if there is one.
+     * @param generation Value of {@link ScrollingTextView#layoutGeneration}
+     *                   when the layout was requested.
+     * @param result The new layout.
+     */
+    private void commitLayout(int generation, TextLayout result) {
+        if (generation != layoutGeneration) return;
+        if (!result.hasFonts(style.wordFont(), style.spacingFont())) return;
+        // words added while the layout was being computed
+        if (result.getWordCount() < words.size()) {
+            result = result.append(words.subList(result.getWordCount(), words.size()));
+        }
+        if (selectionStart != -1 && selectionStart < words.size()) {
+            anchorWord = selectionStart;
+        } else if (layout != null && layout.getLineCount() > 0) {
+            anchorWord = layout.getFirstWordOfLine(getFirstVisibleLine(0));
+        }
+        layout = result;
+        requestLayout();
+    }
+
+    @Override
+    public int findWordAboveOrBelow(int index, int direction) {
+        if (layout == null || index < 0 || index >= layout.getWordCount()) return -1;
+        return layout.getLines().findWordAboveOrBelow(index, layout.getLineOfWord(index), direction);
+    }
+
+    @Override
+    public void setOnWordClicked(IntConsumer handler) {
+        this.onWordClicked = handler;
+    }
+
+    @Override
+    protected void layoutChildren() {
+        double scrollBarWidth = scrollBar.prefWidth(-1);
+        double width = Math.max(0, getWidth() - scrollBarWidth), height = getHeight();
+        scrollBar.resizeRelocate(width, 0, scrollBarWidth, height);
+        content.resizeRelocate(0, 0, width, height);
+        clip.setWidth(width);
+        clip.setHeight(height);
+
+        double lineWidth = Math.max(1, width - 2 * PADDING);
+        if (layout == null) {
+            if (requestedGeneration != layoutGeneration) {
+                requestedGeneration = layoutGeneration;
+                relayoutInBackground(lineWidth);
+            }
+            scrollBar.setMax(0);
+            return;
+        }
+        if (layout.getWidth() != lineWidth) layout = layout.withWidth(lineWidth);
+
+        double total = layout.getHeight() + 2 * PADDING;
+        double max = Math.max(0, total - height);
+        scrollBar.setMax(max);
+        scrollBar.setVisibleAmount(total == 0 ? 0 : max * height / total);
+        scrollBar.setUnitIncrement(layout.getLineHeight());
+        scrollBar.setBlockIncrement(height);
+        if (anchorWord != -1 && anchorWord < layout.getWordCount()) {
+            scrollTo(layout.getLineY(layout.getLineOfWord(anchorWord)));
+        } else if (scrollBar.getValue() > max) {
+            scrollBar.setValue(max);
+        }
+        anchorWord = -1;
+        updateView();
+    }
+
+    /**
+     * @return Y coordinate of the content area where the top of the text
+     * is, which is negative once the text is scrolled.
+     */
+    protected double getTextTop() {
+        return PADDING - scrollBar.getValue();
+    }
+
+    /**
+     * Gets the first line that is at least partly visible.
+     * @param overscan How many more lines above it to include.
+     * @return Index of the line.
+     */
+    protected int getFirstVisibleLine(int overscan) {
+        return Math.max(0, layout.getLines().findClosestLine(-getTextTop()) - overscan);
+    }
+
+    /**
+     * Gets the last line that is at least partly visible.
+     * @param overscan How many more lines below it to include.
+     * @return Index of the line, which is below the first visible line if
+     * no line is visible.
+     */
+    protected int getLastVisibleLine(int overscan) {
+        if (layout.getLineCount() == 0) return -1;
+        int line = layout.getLines().findClosestLine(content.getHeight() - getTextTop());
+        return Math.min(layout.getLineCount() - 1, line + overscan);
+    }
+
+    protected boolean isSelected(int index) {
+        return selectionStart <= index && index <= selectionEnd;
+    }
+
+    /**
+     * Checks whether the space after a selected word is highlighted, which
+     * is only the case between two selected words on the same line.
+     */
+    protected boolean isConnectedToNext(int index) {
+        return index < selectionEnd && layout.getLineOfWord(index) == layout.getLineOfWord(index + 1);
+    }
+
+    /**
+     * Scrolls to a position, keeping it within the text.
+     * @param value Distance from the top of the text.
+     */
+    private void scrollTo(double value) {
+        scrollBar.setValue(Math.max(0, Math.min(scrollBar.getMax(), value)));
+    }
+
+    /**
+     * Scrolls just enough for a line to be visible.
+     * @param line Index of the line.
+     */
+    private void scrollToLine(int line) {
+        LineIndex lines = layout.getLines();
+        double top = PADDING + lines.getLineTop(line), bottom = PADDING + lines.getLineBottom(line);
+        double offset = scrollBar.getValue(), height = content.getHeight();
+        if (top < offset) scrollTo(top - PADDING);
+        else if (bottom > offset + height) scrollTo(bottom + PADDING - height);
+    }
+
+    /**
+     * Finds the word at a point of the content area.
+     * @param x X coordinate.
+     * @param y Y coordinate.
+     * @return Index of the word, or -1 if there is no word there.
+     */
+    private int findWordAt(double x, double y) {
+        if (layout == null) return -1;
+        return layout.getLines().findWordAt(x - PADDING, y - getTextTop());
+    }
+}
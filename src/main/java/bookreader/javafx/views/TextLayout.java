@@ -0,0 +1,213 @@
+package bookreader.javafx.views;
+
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Positions of the words of a text broken into lines of a given width.
+ * Lines are filled greedily, every word is followed by a space, and all
+ * lines have the same height. Coordinates are relative to the top left
+ * corner of the first line.
+ *
+ * A layout doesn't change once it's made. Changing the width or adding
+ * words creates a new layout that reuses the measured word widths, so only
+ * new words or a new font are measured. Every layout also builds the
+ * {@link LineIndex} used to find words by their position.
+ *
+ * Layouts only use nodes that aren't part of a scene, so they can be
+ * computed on any thread.
+ */
+public class TextLayout {
+
+    private final Font wordFont;
+    private final Font spacingFont;
+    /**
+     * Width of the lines.
+     */
+    private final double width;
+    private final double spaceWidth;
+    private final double lineHeight;
+
+    private final int wordCount;
+    private final double[] wordWidths;
+    private final double[] wordXs;
+    private final int[] lineOfWord;
+    private final LineIndex lines;
+
+    private TextLayout(Font wordFont, Font spacingFont, double width, double spaceWidth, double lineHeight,
+                       double[] wordWidths, int wordCount) {
+        this.wordFont = wordFont;
+        this.spacingFont = spacingFont;
+        this.width = width;
+        this.spaceWidth = spaceWidth;
+        this.lineHeight = lineHeight;
+        this.wordCount = wordCount;
+        this.wordWidths = wordWidths;
+        this.wordXs = new double[wordCount];
+        this.lineOfWord = new int[wordCount];
+
+        int[] starts = new int[16];
+        int lines = 0;
+        double x = 0;
+        for (int i = 0; i < wordCount; i++) {
+            // a word wider than the line is left on its own line
+            if (i == 0 || (x > 0 && x + wordWidths[i] > width)) {
+                if (lines == starts.length) starts = Arrays.copyOf(starts, lines * 2);
+                starts[lines++] = i;
+                x = 0;
+            }
+            wordXs[i] = x;
+            lineOfWord[i] = lines - 1;
+            x += wordWidths[i] + spaceWidth;
+        }
+        double[] lineTops = new double[lines + 1];
+        for (int i = 0; i <= lines; i++) lineTops[i] = i * lineHeight;
+        this.lines = new LineIndex(starts, lines, lineTops, wordXs, wordWidths, wordCount);
+    }
+
+    /**
+     * Measures the words of a text and breaks them into lines.
+     * @param words The words.
+     * @param wordFont Font of the words.
+     * @param spacingFont Font of the spaces between the words.
+     * @param width Width of the lines.
+     * @return The layout.
+     */
+    public static TextLayout compute(List<String> words, Font wordFont, Font spacingFont, double width) {
+        Text measurer = new Text();
+        measurer.setFont(spacingFont);
+        measurer.setText(" ");
+        double spaceWidth = measurer.getLayoutBounds().getWidth();
+        double spaceHeight = measurer.getLayoutBounds().getHeight();
+        measurer.setFont(wordFont);
+        double[] widths = measure(measurer, words, new double[words.size()], 0);
+        measurer.setText("Ag");
+        double lineHeight = Math.max(measurer.getLayoutBounds().getHeight(), spaceHeight);
+        return new TextLayout(wordFont, spacingFont, width, spaceWidth, lineHeight, widths, words.size());
+    }
+
+    /**
+     * Breaks words whose widths are already known into lines. The layout
+     * has no fonts, so it can't measure words added to it.
+     * @param wordWidths Width of every word.
+     * @param spaceWidth Width of the space after every word.
+     * @param lineHeight Height of every line.
+     * @param width Width of the lines.
+     * @return The layout.
+     */
+    static TextLayout of(double[] wordWidths, double spaceWidth, double lineHeight, double width) {
+        return new TextLayout(null, null, width, spaceWidth, lineHeight, wordWidths, wordWidths.length);
+    }
+
+    /**
+     * Breaks the same words into lines of another width.
+     * @param width Width of the lines.
+     * @return The new layout.
+     */
+    public TextLayout withWidth(double width) {
+        return new TextLayout(wordFont, spacingFont, width, spaceWidth, lineHeight, wordWidths, wordCount);
+    }
+
+    /**
+     * Adds words after the words of this layout.
+     * @param words The words to add.
+     * @return The new layout.
+     */
+    public TextLayout append(List<String> words) {
+        Text measurer = new Text();
+        measurer.setFont(wordFont);
+        return append(measure(measurer, words, new double[words.size()], 0));
+    }
+
+    /**
+     * Adds words whose widths are already known after the words of this
+     * layout.
+     * @param widths Width of every word to add.
+     * @return The new layout.
+     */
+    TextLayout append(double[] widths) {
+        double[] all = Arrays.copyOf(wordWidths, wordCount + widths.length);
+        System.arraycopy(widths, 0, all, wordCount, widths.length);
+        return new TextLayout(wordFont, spacingFont, width, spaceWidth, lineHeight, all, all.length);
+    }
+
+    private static double[] measure(Text measurer, List<String> words, double[] widths, int offset) {
+        for (int i = 0; i < words.size(); i++) {
+            measurer.setText(words.get(i));
+            widths[offset + i] = measurer.getLayoutBounds().getWidth();
+        }
+        return widths;
+    }
+
+    /**
+     * Checks whether this layout was made with the given fonts.
+     * @param wordFont Font of the words.
+     * @param spacingFont Font of the spaces.
+     * @return True if both fonts are the same, false otherwise.
+     */
+    public boolean hasFonts(Font wordFont, Font spacingFont) {
+        return this.wordFont.equals(wordFont) && this.spacingFont.equals(spacingFont);
+    }
+
+    public Font getWordFont() {
+        return wordFont;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getSpaceWidth() {
+        return spaceWidth;
+    }
+
+    public double getLineHeight() {
+        return lineHeight;
+    }
+
+    /**
+     * @return Total height of all lines.
+     */
+    public double getHeight() {
+        return lines.getLineCount() * lineHeight;
+    }
+
+    public LineIndex getLines() {
+        return lines;
+    }
+
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    public int getLineCount() {
+        return lines.getLineCount();
+    }
+
+    public double getWordX(int index) {
+        return wordXs[index];
+    }
+
+    public double getWordWidth(int index) {
+        return wordWidths[index];
+    }
+
+    public int getLineOfWord(int index) {
+        return lineOfWord[index];
+    }
+
+    public double getLineY(int line) {
+        return lines.getLineTop(line);
+    }
+
+    public int getFirstWordOfLine(int line) {
+        return lines.getFirstWordOfLine(line);
+    }
+
+    public int getLastWordOfLine(int line) {
+        return lines.getLastWordOfLine(line);
+    }
+}
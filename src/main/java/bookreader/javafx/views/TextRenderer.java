@@ -0,0 +1,63 @@
+package bookreader.javafx.views;
+
+import bookreader.models.TextStyle;
+import javafx.scene.Node;
+
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Displays the words of the opened text and the words that are currently
+ * selected. Words are always referred to by their index in the text.
+ */
+public interface TextRenderer {
+
+    /**
+     * @return The node that displays the text, to be placed in the scene.
+     */
+    Node getNode();
+
+    /**
+     * Replaces the displayed words.
+     * @param words All words of the text.
+     */
+    void setWords(List<String> words);
+
+    /**
+     * Adds words after the displayed ones.
+     * @param words Words to add.
+     */
+    void appendWords(List<String> words);
+
+    /**
+     * Changes which words are shown as selected and scrolls to them.
+     * @param start Index of the first selected word, or -1 if nothing is
+     *              selected.
+     * @param end Index of the last selected word, or -1 if nothing is
+     *            selected.
+     */
+    void setSelection(int start, int end);
+
+    /**
+     * Changes the fonts and colors of the text. Nothing is done if the style
+     * is the one already used.
+     * @param style The style.
+     */
+    void setAppearance(TextStyle style);
+
+    /**
+     * Finds the word directly above or below a given word, the one on the
+     * next line closest to its center.
+     * @param index Index of the word.
+     * @param direction +1 for below, -1 for above.
+     * @return Index of the found word, or -1 if there is no line in that
+     * direction or the text isn't laid out yet.
+     */
+    int findWordAboveOrBelow(int index, int direction);
+
+    /**
+     * Sets what happens when a word is clicked.
+     * @param handler Receives the index of the clicked word.
+     */
+    void setOnWordClicked(IntConsumer handler);
+}
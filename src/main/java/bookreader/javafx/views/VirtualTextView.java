@@ -0,0 +1,184 @@
+package bookreader.javafx.views;
+
+import bookreader.models.TextStyle;
+import javafx.css.PseudoClass;
+import javafx.geometry.VPos;
+import javafx.scene.layout.Region;
+import javafx.scene.text.Text;
+
+import java.util.ArrayDeque;
+
+/**
+ * Displays a text word by word, but only creates nodes for the lines that
+ * are visible, plus a few lines around them. The positions of all words
+ * come from a {@link TextLayout}, so scrolling only moves and reuses a
+ * screenful of nodes no matter how long the text is.
+ *
+ * Selected words are styled by the "spotlight" pseudo-class and the colors
+ * come from the stylesheet of the view, so changing the selection only
+ * toggles the pseudo-class of the words entering or leaving it.
+ */
+public class VirtualTextView extends ScrollingTextView {
+
+    /**
+     * Lines above and below the visible ones that also get nodes, so that
+     * scrolling by a line doesn't show an empty area.
+     */
+    private static final int OVERSCAN_LINES = 2;
+    private static final PseudoClass SPOTLIGHT = PseudoClass.getPseudoClass("spotlight");
+
+    /**
+     * Nodes of the words between {@link VirtualTextView#firstCellWord} and
+     * the end of the array, which are the words currently in the scene.
+     */
+    private WordCell[] cells = new WordCell[0];
+    private int firstCellWord = 0;
+    /**
+     * Nodes that aren't showing a word and can be reused.
+     */
+    private final ArrayDeque<WordCell> freeCells = new ArrayDeque<>();
+
+    public VirtualTextView() {
+        getStylesheets().add(VirtualTextView.class.getResource("textview.css").toExternalForm());
+        setStyle(style.toCss());
+    }
+
+    @Override
+    public void setAppearance(TextStyle style) {
+        if (style != this.style) setStyle(style.toCss());
+        super.setAppearance(style);
+    }
+
+    @Override
+    protected void clearView() {
+        for (WordCell cell : cells) release(cell);
+        cells = new WordCell[0];
+    }
+
+    /**
+     * Styles again only the visible words that entered or left the
+     * selection, or whose highlighted space changed.
+     */
+    @Override
+    protected void updateSelection(int oldStart, int oldEnd) {
+        restyleRange(oldStart, oldEnd, oldStart, oldEnd);
+        restyleRange(selectionStart, selectionEnd, oldStart, oldEnd);
+    }
+
+    private void restyleRange(int start, int end, int oldStart, int oldEnd) {
+        if (start == -1) return;
+        int from = Math.max(start, firstCellWord), to = Math.min(end, firstCellWord + cells.length - 1);
+        for (int i = from; i <= to; i++) {
+            if (isSelectionChanged(i, oldStart, oldEnd)) style(cells[i - firstCellWord], i);
+        }
+    }
+
+    /**
+     * Makes the word nodes match the visible lines: nodes of words that
+     * scrolled out are reused for words that scrolled in, and all of them
+     * are moved to their positions and styled.
+     */
+    @Override
+    protected void updateView() {
+        if (layout == null) return;
+        int firstLine = getFirstVisibleLine(OVERSCAN_LINES), lastLine = getLastVisibleLine(OVERSCAN_LINES);
+        if (firstLine > lastLine) {
+            clearView();
+            return;
+        }
+
+        int first = layout.getFirstWordOfLine(firstLine), last = layout.getLastWordOfLine(lastLine);
+        WordCell[] next = new WordCell[last - first + 1];
+        for (int i = 0; i < cells.length; i++) {
+            int index = firstCellWord + i;
+            if (first <= index && index <= last) next[index - first] = cells[i];
+            else release(cells[i]);
+        }
+        double top = getTextTop();
+        for (int index = first; index <= last; index++) {
+            WordCell cell = next[index - first];
+            if (cell == null) {
+                cell = freeCells.isEmpty() ? createCell() : freeCells.pop();
+                cell.text.setText(words.get(index));
+                cell.setVisible(true);
+                next[index - first] = cell;
+            }
+            cell.place(PADDING + layout.getWordX(index), top + layout.getLineY(layout.getLineOfWord(index)),
+                    layout.getWordWidth(index), layout.getSpaceWidth(), layout.getLineHeight());
+            style(cell, index);
+        }
+        cells = next;
+        firstCellWord = first;
+    }
+
+    /**
+     * Applies the current font and selection to the node of a word.
+     */
+    private void style(WordCell cell, int index) {
+        // fonts are cached by the settings, so a different object is a different font
+        if (cell.text.getFont() != layout.getWordFont()) cell.text.setFont(layout.getWordFont());
+        boolean selected = isSelected(index);
+        cell.setSelected(selected, selected && isConnectedToNext(index));
+    }
+
+    private WordCell createCell() {
+        WordCell cell = new WordCell();
+        content.getChildren().add(cell);
+        return cell;
+    }
+
+    /**
+     * Hides the node of a word that isn't visible anymore so it can be
+     * reused.
+     */
+    private void release(WordCell cell) {
+        cell.setVisible(false);
+        freeCells.push(cell);
+    }
+
+    /**
+     * Node of a single word and the space after it. The spotlight behind the
+     * word only covers the space when the next word is selected too.
+     */
+    private static class WordCell extends Region {
+        private final Region spotlight = new Region();
+        private final Text text = new Text();
+        private boolean selected = false;
+        private boolean connected = false;
+        private double spaceWidth = 0;
+
+        private WordCell() {
+            setManaged(false);
+            getStyleClass().add("word-cell");
+            spotlight.getStyleClass().add("word-spotlight");
+            text.getStyleClass().add("word-text");
+            text.setTextOrigin(VPos.CENTER);
+            // positioned here instead of by the layout pass
+            spotlight.setManaged(false);
+            text.setManaged(false);
+            getChildren().addAll(spotlight, text);
+        }
+
+        private void place(double x, double y, double wordWidth, double spaceWidth, double height) {
+            this.spaceWidth = spaceWidth;
+            resizeRelocate(x, y, wordWidth + spaceWidth, height);
+            text.setLayoutY(height / 2);
+            resizeSpotlight();
+        }
+
+        private void setSelected(boolean selected, boolean connected) {
+            if (selected != this.selected) {
+                this.selected = selected;
+                pseudoClassStateChanged(SPOTLIGHT, selected);
+            }
+            if (connected != this.connected) {
+                this.connected = connected;
+                resizeSpotlight();
+            }
+        }
+
+        private void resizeSpotlight() {
+            spotlight.resize(connected ? getWidth() : getWidth() - spaceWidth, getHeight());
+        }
+    }
+}
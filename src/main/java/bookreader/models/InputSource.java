@@ -0,0 +1,20 @@
+package bookreader.models;
+
+/**
+ * Where an image that is recognised comes from. Different sources need
+ * different preprocessing.
+ */
+public enum InputSource {
+    /**
+     * A picture taken with the camera.
+     */
+    CAMERA,
+    /**
+     * An image file opened by the user.
+     */
+    IMAGE_FILE,
+    /**
+     * A page of a multi-page document, such as a PDF.
+     */
+    DOCUMENT_PAGE
+}
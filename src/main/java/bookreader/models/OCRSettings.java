@@ -0,0 +1,48 @@
+package bookreader.models;
+
+import net.sourceforge.tess4j.ITessAPI;
+
+/**
+ * The configuration a Tesseract engine is set up with. Engines with equal
+ * settings are interchangeable, which is what allows them to be pooled.
+ * @param language Tesseract language code, for example "bul" or "bul+eng".
+ * @param pageSegMode Page segmentation mode from
+ *                    {@link ITessAPI.TessPageSegMode}, or -1 to keep the
+ *                    engine's default.
+ * @param ocrEngineMode Engine mode from {@link ITessAPI.TessOcrEngineMode}.
+ */
+public record OCRSettings(String language, int pageSegMode, int ocrEngineMode) {
+
+    /**
+     * Page segmentation mode value that leaves the engine default untouched.
+     */
+    public static final int DEFAULT_PAGE_SEG_MODE = -1;
+
+    /**
+     * Creates settings for a language, keeping the default page segmentation
+     * and engine modes.
+     * @param language Tesseract language code.
+     * @return The settings.
+     */
+    public static OCRSettings of(String language) {
+        return new OCRSettings(language, DEFAULT_PAGE_SEG_MODE, ITessAPI.TessOcrEngineMode.OEM_DEFAULT);
+    }
+
+    /**
+     * Creates a copy of these settings with a different language.
+     * @param language Tesseract language code.
+     * @return The new settings.
+     */
+    public OCRSettings withLanguage(String language) {
+        return new OCRSettings(language, pageSegMode, ocrEngineMode);
+    }
+
+    /**
+     * Creates a copy of these settings with a different page segmentation mode.
+     * @param pageSegMode Page segmentation mode.
+     * @return The new settings.
+     */
+    public OCRSettings withPageSegMode(int pageSegMode) {
+        return new OCRSettings(language, pageSegMode, ocrEngineMode);
+    }
+}
@@ -0,0 +1,38 @@
+package bookreader.models;
+
+/**
+ * A single step of preparing an image for OCR.
+ * @see bookreader.components.ImagePreprocessor
+ */
+public enum PreprocessingStage {
+    /**
+     * Converts the image to a single channel grayscale image.
+     */
+    GRAYSCALE,
+    /**
+     * Detects how much the text is rotated and rotates the image back.
+     */
+    DESKEW,
+    /**
+     * Turns the image into black and white, using a threshold that adapts to
+     * the lighting of every part of the image.
+     */
+    ADAPTIVE_THRESHOLD,
+    /**
+     * Removes small specks of noise.
+     */
+    DENOISE,
+    /**
+     * Cuts away the empty margins around the content.
+     */
+    CROP,
+    /**
+     * Scales the image so that its text has the x-height Tesseract recognises
+     * best. Shrinks photos with large text and enlarges tiny text.
+     */
+    NORMALIZE_RESOLUTION,
+    /**
+     * Shrinks images that are bigger than needed for OCR.
+     */
+    DOWNSCALE
+}
@@ -0,0 +1,20 @@
+package bookreader.models;
+
+import java.util.List;
+
+/**
+ * The result of recognising an image or a document.
+ * @param pages Filtered text of every page. Images have a single page.
+ * @param words Recognised words with their bounding boxes. Can be empty if
+ *              the words weren't recorded.
+ */
+public record RecognitionResult(List<String> pages, List<RecognizedWord> words) {
+
+    /**
+     * Gets the text of the whole result.
+     * @return The text of all non-empty pages, separated by new lines.
+     */
+    public String getText() {
+        return String.join("\n", pages.stream().filter(x -> !x.isEmpty()).toList());
+    }
+}
@@ -0,0 +1,15 @@
+package bookreader.models;
+
+/**
+ * A single word recognised by OCR, together with where it was found.
+ * @param text Text of the word.
+ * @param confidence How confident the engine is in the word, from 0 to 100.
+ * @param x Left edge of the word's bounding box, in pixels.
+ * @param y Top edge of the word's bounding box, in pixels.
+ * @param width Width of the bounding box.
+ * @param height Height of the bounding box.
+ * @param line Index of the text line the word is on, counted from the start
+ *             of the page.
+ */
+public record RecognizedWord(String text, float confidence, int x, int y, int width, int height, int line) {
+}
@@ -0,0 +1,9 @@
+package bookreader.models;
+
+/**
+ * How long a preprocessing stage took for a single image.
+ * @param stage The stage.
+ * @param nanos Wall time of the stage, in nanoseconds.
+ */
+public record StageTiming(PreprocessingStage stage, long nanos) {
+}
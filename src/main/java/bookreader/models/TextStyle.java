@@ -0,0 +1,37 @@
+package bookreader.models;
+
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+import javafx.scene.text.Font;
+
+/**
+ * How the text on the main screen looks. Styles are cached by the low
+ * vision settings, so the same combination of settings always gives the
+ * same object and a view can tell that nothing changed by comparing
+ * references.
+ * @param wordFont Font of the words.
+ * @param spacingFont Font of the spaces between the words.
+ * @param background Color of the background.
+ * @param text Color of the words.
+ * @param spotlightBackground Color of the background of selected words.
+ * @param spotlightText Color of selected words.
+ */
+public record TextStyle(Font wordFont, Font spacingFont, Paint background, Paint text,
+                        Paint spotlightBackground, Paint spotlightText) {
+
+    /**
+     * Describes the colors as CSS looked-up colors: -word-text,
+     * -spotlight-background and -spotlight-text.
+     * @return The declarations, to be set as the inline style of a node.
+     */
+    public String toCss() {
+        return "-word-text: " + toCss(text) + "; -spotlight-background: " + toCss(spotlightBackground)
+                + "; -spotlight-text: " + toCss(spotlightText) + ";";
+    }
+
+    private static String toCss(Paint paint) {
+        if (!(paint instanceof Color c)) return "transparent";
+        return String.format("#%02x%02x%02x%02x", Math.round(c.getRed() * 255), Math.round(c.getGreen() * 255),
+                Math.round(c.getBlue() * 255), Math.round(c.getOpacity() * 255));
+    }
+}
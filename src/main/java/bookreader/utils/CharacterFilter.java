@@ -0,0 +1,101 @@
+package bookreader.utils;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Filters text in a single pass over its characters. All character
+ * substitutions and deletions are compiled into a lookup table, so the cost
+ * of filtering doesn't grow with the amount of rules, and only one output
+ * buffer is allocated per call.
+ *
+ * When whitespace is normalised, the filter also does the following, in the
+ * same pass:
+ * <ul>
+ *     <li>whitespace at the start and end of the text is removed;</li>
+ *     <li>runs of spaces are collapsed into one space;</li>
+ *     <li>a hyphen directly before a new line is removed together with the
+ *     new line, joining words split between lines;</li>
+ *     <li>other new lines become spaces.</li>
+ * </ul>
+ * Whitespace is normalised based on the original text, before characters
+ * are deleted, so the result is the same as applying these steps one after
+ * another with {@link String#replaceAll} and then substituting and deleting
+ * characters.
+ */
+public class CharacterFilter {
+
+    /**
+     * What every character is replaced with, indexed by the character.
+     * Characters outside the table are kept as they are.
+     */
+    private final char[] substitutions;
+    /**
+     * Whether a character is removed, indexed by the character.
+     */
+    private final boolean[] deletions;
+    private final boolean normaliseWhitespace;
+
+    /**
+     * Compiles a filter.
+     * @param substitutions Characters to replace and what to replace them with.
+     * @param deletions Characters to remove.
+     * @param normaliseWhitespace Whether to also trim the text, collapse
+     *                            spaces and join lines.
+     */
+    public CharacterFilter(Map<Character, Character> substitutions, Set<Character> deletions,
+                           boolean normaliseWhitespace) {
+        int size = 0;
+        for (char c : substitutions.keySet()) size = Math.max(size, c + 1);
+        for (char c : deletions) size = Math.max(size, c + 1);
+        this.substitutions = new char[size];
+        this.deletions = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            this.substitutions[i] = (char)i;
+        }
+        substitutions.forEach((from, to) -> this.substitutions[from] = to);
+        for (char c : deletions) {
+            this.deletions[c] = true;
+        }
+        this.normaliseWhitespace = normaliseWhitespace;
+    }
+
+    /**
+     * Filters a text.
+     * @param text Original text.
+     * @return The filtered text.
+     */
+    public String filter(String text) {
+        int start = 0, end = text.length();
+        if (normaliseWhitespace) {
+            // the same characters as String#trim
+            while (start < end && text.charAt(start) <= ' ') start++;
+            while (end > start && text.charAt(end - 1) <= ' ') end--;
+        }
+        char[] output = new char[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (normaliseWhitespace) {
+                if (c == ' ') {
+                    if (i == start || text.charAt(i - 1) != ' ') output[length++] = ' ';
+                    continue;
+                }
+                if (c == '-' && i + 1 < end && text.charAt(i + 1) == '\n') {
+                    i++;
+                    continue;
+                }
+                if (c == '\n') {
+                    output[length++] = ' ';
+                    continue;
+                }
+            }
+            if (c < substitutions.length) {
+                if (deletions[c]) continue;
+                c = substitutions[c];
+            }
+            output[length++] = c;
+        }
+        return new String(output, 0, length);
+    }
+}
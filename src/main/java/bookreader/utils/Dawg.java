@@ -0,0 +1,429 @@
+package bookreader.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A set of words stored as a minimal directed acyclic word graph. Words
+ * that share a beginning share the same edges, and so do words that share an
+ * ending, so a lexicon of a million word forms takes a few megabytes.
+ *
+ * The graph is a flat array of edges, two ints each: the character of the
+ * edge with its flags, and the index of the first edge of the node it leads
+ * to. The edges of a node are stored next to each other, sorted by character,
+ * and the last one is flagged. The same layout is used in files, so a saved
+ * dictionary is loaded with a single bulk copy of its edges instead of being
+ * parsed. The edges are kept in an int array, because the closest word
+ * search reads them thousands of times per word.
+ */
+public class Dawg {
+
+    private static final int MAGIC = 0x44415747;
+    private static final int FORMAT_VERSION = 1;
+    /**
+     * Amount of ints before the edges: magic, version, word count, edge count
+     * and root.
+     */
+    private static final int HEADER_SIZE = 5;
+    /**
+     * Flag of an edge that completes a word.
+     */
+    private static final int FINAL = 1;
+    /**
+     * Flag of the last edge of a node.
+     */
+    private static final int LAST = 2;
+    /**
+     * Target of an edge leading to a node without edges.
+     */
+    private static final int NONE = -1;
+
+    private final int[] edges;
+    private final int wordCount;
+    private final int edgeCount;
+    /**
+     * Index of the first edge of the root, or {@link Dawg#NONE} if the
+     * dictionary is empty.
+     */
+    private final int root;
+
+    private Dawg(ByteBuffer buffer) throws IOException {
+        IntBuffer ints = buffer.asIntBuffer();
+        if (ints.limit() < HEADER_SIZE || ints.get(0) != MAGIC || ints.get(1) != FORMAT_VERSION) {
+            throw new IOException("Not a dictionary file");
+        }
+        this.wordCount = ints.get(2);
+        this.edgeCount = ints.get(3);
+        this.root = ints.get(4);
+        if (ints.limit() < HEADER_SIZE + 2 * edgeCount) {
+            throw new IOException("The dictionary file is incomplete");
+        }
+        this.edges = new int[2 * edgeCount];
+        ints.position(HEADER_SIZE).get(edges);
+    }
+
+    /**
+     * Loads a dictionary saved with {@link Dawg#write(Path)}. The file is
+     * mapped into memory and its edges are copied at once.
+     * @param file The dictionary file.
+     * @return The dictionary.
+     * @throws IOException If the file can't be read or isn't a dictionary.
+     */
+    public static Dawg load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new Dawg(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Builds a dictionary from a list of words.
+     * @param words The words, sorted in ascending order. Duplicates are
+     *              ignored.
+     * @return The dictionary.
+     * @throws IllegalArgumentException If the words aren't sorted.
+     */
+    public static Dawg build(Iterable<String> words) {
+        Builder builder = new Builder();
+        for (String word : words) {
+            builder.add(word);
+        }
+        try {
+            return new Dawg(builder.finish());
+        } catch (IOException e) {
+            // the buffer is created right above, so it's always valid
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Saves the dictionary to a file.
+     * @param file The file to write.
+     * @throws IOException If the file can't be written.
+     */
+    public void write(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * (HEADER_SIZE + 2 * edgeCount));
+        buffer.asIntBuffer()
+                .put(MAGIC).put(FORMAT_VERSION).put(wordCount).put(edgeCount).put(root)
+                .put(edges);
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+    }
+
+    /**
+     * @return The amount of words in the dictionary.
+     */
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * @return The amount of edges in the graph, which determines its size.
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Checks whether a word is in the dictionary.
+     * @param word The word.
+     * @return True if it is, false otherwise.
+     */
+    public boolean contains(CharSequence word) {
+        if (word.length() == 0) return false;
+        int node = root;
+        int edge = NONE;
+        for (int i = 0; i < word.length(); i++) {
+            if (node == NONE) return false;
+            edge = findEdge(node, word.charAt(i));
+            if (edge == NONE) return false;
+            node = target(edge);
+        }
+        return (flags(edge) & FINAL) != 0;
+    }
+
+    /**
+     * Finds the closest word in the dictionary to a given word, by the
+     * amount of inserted, removed and replaced characters. Branches of the
+     * graph that can't get close enough are not visited.
+     * @param word The word.
+     * @param maxDistance Highest distance a match can have.
+     * @return The closest word, or null if there is no word within the
+     * distance or several words are equally close.
+     */
+    public String findClosest(CharSequence word, int maxDistance) {
+        if (root == NONE) return null;
+        Search search = new Search(word.toString().toCharArray(), maxDistance);
+        search.visit(root, 0);
+        return search.ties == 1 ? search.best : null;
+    }
+
+    private int findEdge(int node, char c) {
+        for (int edge = node; ; edge++) {
+            int label = label(edge);
+            if (label == c) return edge;
+            if (label > c || (flags(edge) & LAST) != 0) return NONE;
+        }
+    }
+
+    private char label(int edge) {
+        return (char)(edges[2 * edge] >>> 16);
+    }
+
+    private int flags(int edge) {
+        return edges[2 * edge] & 0xFFFF;
+    }
+
+    private int target(int edge) {
+        return edges[2 * edge + 1];
+    }
+
+    /**
+     * Depth-first search for the closest word, keeping one row of the edit
+     * distance table for every character of the current path. Only the
+     * cells within the highest distance of the diagonal are calculated, the
+     * others can't lead to a match and are capped.
+     *
+     * Once every cell of a row has used up the distance of the best match,
+     * the rest of a match has to be the rest of the word exactly, so instead
+     * of going through all edges below, only the remaining characters are
+     * followed. After the first mistake of a word that is almost every
+     * branch, which keeps the search close to the length of the word times
+     * the amount of edges along it.
+     */
+    private class Search {
+        private final char[] word;
+        private final int maxDistance;
+        /**
+         * Value of the cells that are further than the highest distance.
+         */
+        private final int cap;
+        private final int[][] rows;
+        private final char[] path;
+        private int bestDistance;
+        private String best = null;
+        private int ties = 0;
+
+        Search(char[] word, int maxDistance) {
+            this.word = word;
+            this.maxDistance = maxDistance;
+            this.cap = maxDistance + 1;
+            // longer words can't be within the distance
+            int maxDepth = word.length + maxDistance;
+            this.rows = new int[maxDepth + 1][word.length + 1];
+            this.path = new char[maxDepth];
+            this.bestDistance = maxDistance;
+            for (int j = 0; j <= word.length; j++) rows[0][j] = Math.min(j, cap);
+        }
+
+        void visit(int node, int depth) {
+            int n = word.length;
+            int[] previous = rows[depth];
+            int[] row = rows[depth + 1];
+            int from = Math.max(1, depth + 1 - maxDistance);
+            int to = Math.min(n, depth + 1 + maxDistance);
+            for (int edge = node; ; edge++) {
+                int value = edges[2 * edge], target = edges[2 * edge + 1];
+                char c = (char)(value >>> 16);
+                row[0] = Math.min(depth + 1, cap);
+                row[from - 1] = from == 1 ? row[0] : cap;
+                int min = row[from - 1];
+                for (int j = from; j <= to; j++) {
+                    int substitution = previous[j - 1] + (word[j - 1] == c ? 0 : 1);
+                    row[j] = Math.min(cap, Math.min(substitution, Math.min(previous[j], row[j - 1]) + 1));
+                    min = Math.min(min, row[j]);
+                }
+                if (to < n) row[to + 1] = cap;
+                path[depth] = c;
+                // the end of the word is outside of the calculated cells if the path is too short
+                if ((value & FINAL) != 0 && to == n && row[n] <= bestDistance) {
+                    found(row[n], depth + 1);
+                }
+                if (target != NONE && min <= bestDistance) {
+                    if (min == bestDistance) {
+                        for (int j = from - 1; j < to + 1 && j < n; j++) {
+                            if (row[j] == min) followRest(target, depth + 1, j);
+                        }
+                    } else if (depth + 1 < path.length) {
+                        visit(target, depth + 1);
+                    }
+                }
+                if ((value & LAST) != 0) return;
+            }
+        }
+
+        /**
+         * Follows the rest of the word exactly from a node, and records the
+         * match if the path ends in a word.
+         * @param node First edge of the node.
+         * @param depth Length of the path to the node.
+         * @param j Index of the character of the word the path continues
+         *          with.
+         */
+        private void followRest(int node, int depth, int j) {
+            int edge = NONE;
+            for (int i = j; i < word.length; i++) {
+                if (node == NONE) return;
+                edge = findEdge(node, word[i]);
+                if (edge == NONE) return;
+                node = target(edge);
+            }
+            if ((flags(edge) & FINAL) == 0) return;
+            System.arraycopy(word, j, path, depth, word.length - j);
+            found(bestDistance, depth + word.length - j);
+        }
+
+        /**
+         * Records a word of the dictionary within the distance of the best
+         * match.
+         * @param distance Distance of the word.
+         * @param length Length of the word, which is at the start of the
+         *               path.
+         */
+        private void found(int distance, int length) {
+            if (distance < bestDistance || best == null) {
+                bestDistance = distance;
+                best = new String(path, 0, length);
+                ties = 1;
+            } else {
+                ties++;
+            }
+        }
+    }
+
+    /**
+     * Builds a minimal graph from sorted words, minimising it while the
+     * words are added: once a word is added, the nodes of the previous word
+     * that aren't shared with it can't change anymore, so they're replaced
+     * with an equal node found earlier, if there is one.
+     */
+    private static class Builder {
+        private final Map<Node, Node> register = new HashMap<>();
+        private final List<Node> path = new ArrayList<>(List.of(new Node()));
+        private String previous = "";
+        private int wordCount = 0;
+
+        void add(String word) {
+            int compared = word.compareTo(previous);
+            if (compared < 0) {
+                throw new IllegalArgumentException("Words must be sorted: " + word + " after " + previous);
+            }
+            if (compared == 0 || word.isEmpty()) return;
+            int common = 0;
+            while (common < word.length() && common < previous.length()
+                    && word.charAt(common) == previous.charAt(common)) {
+                common++;
+            }
+            minimise(common);
+            for (int i = common; i < word.length(); i++) {
+                Node child = new Node();
+                path.get(i).add(word.charAt(i), child);
+                path.add(child);
+            }
+            path.get(word.length()).isFinal = true;
+            previous = word;
+            wordCount++;
+        }
+
+        /**
+         * Replaces the nodes of the previous word deeper than a given
+         * length with their registered equivalents.
+         * @param depth Length of the part that is kept.
+         */
+        private void minimise(int depth) {
+            for (int i = path.size() - 1; i > depth; i--) {
+                Node child = path.remove(i);
+                Node registered = register.putIfAbsent(child, child);
+                if (registered != null) path.get(i - 1).replaceLast(registered);
+            }
+        }
+
+        ByteBuffer finish() {
+            minimise(0);
+            Node rootNode = path.get(0);
+            // give every node the index of its first edge
+            Map<Node, Integer> offsets = new IdentityHashMap<>();
+            int edgeCount = assignOffsets(rootNode, offsets, 0);
+            IntBuffer ints = IntBuffer.allocate(HEADER_SIZE + 2 * edgeCount);
+            ints.put(MAGIC).put(FORMAT_VERSION).put(wordCount).put(edgeCount)
+                    .put(rootNode.size == 0 ? NONE : offsets.get(rootNode));
+            for (Map.Entry<Node, Integer> entry : offsets.entrySet()) {
+                Node node = entry.getKey();
+                for (int i = 0; i < node.size; i++) {
+                    Node child = node.children[i];
+                    int flags = (child.isFinal ? FINAL : 0) | (i == node.size - 1 ? LAST : 0);
+                    int index = HEADER_SIZE + 2 * (entry.getValue() + i);
+                    ints.put(index, node.labels[i] << 16 | flags);
+                    ints.put(index + 1, child.size == 0 ? NONE : offsets.get(child));
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(4 * ints.capacity());
+            buffer.asIntBuffer().put(ints.rewind());
+            return buffer;
+        }
+
+        private int assignOffsets(Node node, Map<Node, Integer> offsets, int next) {
+            if (node.size == 0 || offsets.containsKey(node)) return next;
+            offsets.put(node, next);
+            next += node.size;
+            for (int i = 0; i < node.size; i++) {
+                next = assignOffsets(node.children[i], offsets, next);
+            }
+            return next;
+        }
+    }
+
+    /**
+     * Node of the graph while it's being built. Nodes are compared by
+     * their edges, which lead to nodes that are already registered, so
+     * comparing the children by identity is enough.
+     */
+    private static class Node {
+        private char[] labels = new char[2];
+        private Node[] children = new Node[2];
+        private int size = 0;
+        private boolean isFinal = false;
+
+        void add(char label, Node child) {
+            if (size == labels.length) {
+                labels = Arrays.copyOf(labels, size * 2);
+                children = Arrays.copyOf(children, size * 2);
+            }
+            labels[size] = label;
+            children[size] = child;
+            size++;
+        }
+
+        void replaceLast(Node child) {
+            children[size - 1] = child;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Node other)) return false;
+            if (isFinal != other.isFinal || size != other.size) return false;
+            for (int i = 0; i < size; i++) {
+                if (labels[i] != other.labels[i] || children[i] != other.children[i]) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = isFinal ? 1 : 0;
+            for (int i = 0; i < size; i++) {
+                hash = 31 * hash + labels[i];
+                hash = 31 * hash + System.identityHashCode(children[i]);
+            }
+            return hash;
+        }
+    }
+}
@@ -1,23 +1,31 @@
 package bookreader.utils;
 
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
-import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 import org.springframework.stereotype.Service;
 
-import javax.imageio.ImageIO;
-import javax.swing.*;
 import java.awt.*;
 import java.awt.image.*;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
 
 @Service
 public class ImageUtils {
 
+    /**
+     * Longest side of the copy the x-height is measured on.
+     */
+    private static final int X_HEIGHT_SAMPLE_SIZE = 2000;
+    /**
+     * Minimum amount of letter-like components needed to trust the
+     * x-height estimate.
+     */
+    private static final int X_HEIGHT_MIN_COMPONENTS = 20;
+
     /**
      * Creates a deep copy of a buffered image.
      * @param bi The original buffered image.
@@ -41,44 +49,161 @@ public class ImageUtils {
         BufferedImage image = new BufferedImage(bi.getWidth(), bi.getHeight(),
                 BufferedImage.TYPE_BYTE_GRAY);
         Graphics g = image.getGraphics();
-        g.drawImage(image, 0, 0, null);
+        g.drawImage(bi, 0, 0, null);
         g.dispose();
         return image;
-
-//        ImageFilter filter = new GrayFilter(true, 50);
-//        ImageProducer producer = new FilteredImageSource(bi.getSource(), filter);
-//        return Toolkit.getDefaultToolkit().createImage(producer);
     }
 
     /**
-     * Transforms an OpenCV material into a buffered image.
+     * Transforms an OpenCV material into a buffered image. The pixels are
+     * copied directly, without encoding the image. Materials with 1, 3 or 4
+     * channels become gray, BGR or ABGR images respectively.
      * @param mat Material.
      * @return Transformed buffered image.
      */
     public BufferedImage openCVMatToBufferedImage(Mat mat) {
-//        BufferedImage ret = new BufferedImage(mat.width(), mat.height(), BufferedImage.TYPE_3BYTE_BGR);
-//        //DataBufferInt intBuffer = ret.getRa
-//        byte[] data = ((DataBufferByte) ret.getRaster().getDataBuffer()).getData();
-//        mat.get(0, 0, data);
-//        return ret;
-        MatOfByte matOfByte = new MatOfByte();
-        Imgcodecs.imencode(".jpg", mat, matOfByte);
-        byte[] byteArray = matOfByte.toArray();
-        InputStream is = new ByteArrayInputStream(byteArray);
-        BufferedImage bufferedImage = null;
-        try {
-            bufferedImage = ImageIO.read(is);
-            return bufferedImage;
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (mat.depth() != CvType.CV_8U) {
+            Mat converted = new Mat();
+            mat.convertTo(converted, CvType.CV_8U);
+            mat = converted;
         }
-        return null;
+        int type = switch (mat.channels()) {
+            case 1 -> BufferedImage.TYPE_BYTE_GRAY;
+            case 3 -> BufferedImage.TYPE_3BYTE_BGR;
+            case 4 -> BufferedImage.TYPE_4BYTE_ABGR;
+            default -> throw new IllegalArgumentException("Unsupported amount of channels: " + mat.channels());
+        };
+        BufferedImage image = new BufferedImage(mat.width(), mat.height(), type);
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        mat.get(0, 0, data);
+        if (type == BufferedImage.TYPE_4BYTE_ABGR) {
+            // OpenCV stores BGRA, java stores ABGR
+            for (int i = 0; i < data.length; i += 4) {
+                byte alpha = data[i + 3];
+                data[i + 3] = data[i + 2];
+                data[i + 2] = data[i + 1];
+                data[i + 1] = data[i];
+                data[i] = alpha;
+            }
+        }
+        return image;
     }
 
-    public Mat bufferedImage2Mat(BufferedImage image) throws IOException {
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        ImageIO.write(image, "jpg", byteArrayOutputStream);
-        byteArrayOutputStream.flush();
-        return Imgcodecs.imdecode(new MatOfByte(byteArrayOutputStream.toByteArray()), Imgcodecs.IMWRITE_JPEG_QUALITY);
+    /**
+     * Transforms a buffered image into a 3 channel BGR OpenCV material. Gray,
+     * BGR and ABGR images have their pixels copied directly. Any other
+     * type is first drawn onto a BGR image.
+     * @param image Buffered image.
+     * @return Transformed material. Gray images stay with 1 channel.
+     */
+    public Mat bufferedImage2Mat(BufferedImage image) {
+        return switch (image.getType()) {
+            case BufferedImage.TYPE_BYTE_GRAY -> rasterToMat(image, CvType.CV_8UC1);
+            case BufferedImage.TYPE_3BYTE_BGR -> rasterToMat(image, CvType.CV_8UC3);
+            case BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_4BYTE_ABGR_PRE -> {
+                Mat abgr = rasterToMat(image, CvType.CV_8UC4);
+                Mat bgr = new Mat(abgr.rows(), abgr.cols(), CvType.CV_8UC3);
+                Core.mixChannels(List.of(abgr), List.of(bgr), new MatOfInt(1, 0, 2, 1, 3, 2));
+                yield bgr;
+            }
+            default -> rasterToMat(convertImage(image, BufferedImage.TYPE_3BYTE_BGR), CvType.CV_8UC3);
+        };
+    }
+
+    /**
+     * Transforms a buffered image into a single channel grayscale OpenCV
+     * material. Gray images are copied directly and BGR images are
+     * converted by OpenCV, without any intermediate image.
+     * @param image Buffered image.
+     * @return Grayscale material.
+     */
+    public Mat bufferedImageToGrayMat(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            return rasterToMat(image, CvType.CV_8UC1);
+        }
+        if (image.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+            return rasterToMat(convertImage(image, BufferedImage.TYPE_BYTE_GRAY), CvType.CV_8UC1);
+        }
+        Mat gray = new Mat();
+        Imgproc.cvtColor(rasterToMat(image, CvType.CV_8UC3), gray, Imgproc.COLOR_BGR2GRAY);
+        return gray;
+    }
+
+    /**
+     * Estimates the height of the lowercase letters of the text in a
+     * grayscale image. The image is binarised and the median height of its
+     * letter-sized connected components is taken, which for running text is
+     * close to the x-height. Large images are measured on a shrunk copy.
+     * @param gray Single channel grayscale material with dark text on a light
+     *             background.
+     * @return The estimated x-height in pixels of the given image, or -1 if the
+     * image doesn't contain enough letter-like components.
+     */
+    public double estimateXHeight(Mat gray) {
+        double scale = Math.min(1.0, (double)X_HEIGHT_SAMPLE_SIZE / Math.max(gray.width(), gray.height()));
+        Mat sample = gray;
+        if (scale < 1.0) {
+            sample = new Mat();
+            Imgproc.resize(gray, sample, new Size(), scale, scale, Imgproc.INTER_AREA);
+        }
+        Mat ink = new Mat();
+        Imgproc.threshold(sample, ink, 0, 255, Imgproc.THRESH_BINARY_INV | Imgproc.THRESH_OTSU);
+        Mat labels = new Mat();
+        Mat stats = new Mat();
+        Mat centroids = new Mat();
+        int count = Imgproc.connectedComponentsWithStats(ink, labels, stats, centroids);
+
+        int maxHeight = Math.max(2, sample.height() / 10);
+        int[] heights = new int[count];
+        int letters = 0;
+        int[] row = new int[stats.cols()];
+        // label 0 is the background
+        for (int i = 1; i < count; i++) {
+            stats.get(i, 0, row);
+            int width = row[Imgproc.CC_STAT_WIDTH];
+            int height = row[Imgproc.CC_STAT_HEIGHT];
+            if (height < 2 || height > maxHeight) continue;
+            if (width > height * 3 || height > width * 6) continue;
+            heights[letters++] = height;
+        }
+        if (letters < X_HEIGHT_MIN_COMPONENTS) return -1;
+        Arrays.sort(heights, 0, letters);
+        return heights[letters / 2] / scale;
+    }
+
+    /**
+     * Copies the pixel bytes of an image into a new material. Images whose
+     * raster doesn't start at the beginning of its data buffer, such as
+     * sub-images, are copied into a fresh image first.
+     * @param image Image with a byte raster.
+     * @param matType The OpenCV type matching the image's pixel layout.
+     * @return A material with the same pixels.
+     */
+    private Mat rasterToMat(BufferedImage image, int matType) {
+        WritableRaster raster = image.getRaster();
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int expectedLength = image.getWidth() * image.getHeight() * CvType.channels(matType);
+        if (data.length != expectedLength
+                || raster.getSampleModelTranslateX() != 0
+                || raster.getSampleModelTranslateY() != 0) {
+            return rasterToMat(convertImage(image, image.getType()), matType);
+        }
+        Mat mat = new Mat(image.getHeight(), image.getWidth(), matType);
+        mat.put(0, 0, data);
+        return mat;
+    }
+
+    /**
+     * Draws an image onto a new image of the given type.
+     * @param image Original image.
+     * @param type Type of the new image.
+     * @return The new image.
+     */
+    private BufferedImage convertImage(BufferedImage image, int type) {
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        Graphics g = converted.getGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return converted;
     }
 }
@@ -0,0 +1,213 @@
+package bookreader.utils;
+
+/**
+ * Identifies the language of a text by the letters, pairs and triples of
+ * letters it contains. Every language has a profile of how common these
+ * n-grams are, built from a list of its most frequent words. The profiles
+ * are hashed into small arrays of weights, so identifying a text is a single
+ * pass over its characters without creating any objects for them.
+ *
+ * Only the languages that the rest of the program can read and recognise
+ * are known, Bulgarian ("bg") and English ("en").
+ */
+public class LanguageIdentifier {
+
+    /**
+     * Codes of the known languages. The first one is used when there isn't
+     * any evidence for either.
+     */
+    private static final String[] LANGUAGES = {"bg", "en"};
+    /**
+     * Script every known language is written in, in the same order as
+     * {@link LanguageIdentifier#LANGUAGES}.
+     */
+    private static final Character.UnicodeScript[] SCRIPTS = {
+            Character.UnicodeScript.CYRILLIC, Character.UnicodeScript.LATIN
+    };
+
+    /**
+     * Frequent words of every known language, in the same order as
+     * {@link LanguageIdentifier#LANGUAGES}.
+     */
+    private static final String[] SAMPLES = {
+            "и на в да се е от за не са с че по това като той тя те ние вие аз но ще си му ѝ го им ги "
+                    + "беше бяха бил била било който която което които към след при през до или ако когато "
+                    + "защото само още много малко един една едно има няма може трябва всички всичко нещо "
+                    + "нищо време човек хора година години ден дни живот свят дом къща страна град деца "
+                    + "дете жена мъж ръка очи глава дума думи вода път работа място част случай въпрос "
+                    + "право държава днес вчера утре сега тогава там тук така защо какво кой къде как "
+                    + "колко наш наша негов нейния техния голям голяма нов нова стар добър добре лош бял "
+                    + "черен първи последен говори каза казва знае вижда видя прави направи иска отиде "
+                    + "дойде стана живее обича мисли чете пише книга книги училище история наука език "
+                    + "български юли юни край шест цвят филм шофьор щастие жълт пъстър чувство между "
+                    + "около срещу вместо обаче също вече винаги никога понякога отново заедно",
+            "the of and to in a is that for it as was with be by on not he she they we you this are "
+                    + "or his her from at which but have has had an were their there been one all would "
+                    + "will can more if no out so said what up its about into than them only other new "
+                    + "some could time these two may then do first any my now such like our over man me "
+                    + "even most made after also did many before must through back years where much your "
+                    + "way well down should because each just those people how too little state good very "
+                    + "make world still own see men work long get here between both life being under never "
+                    + "day same another know while last might us great old year off come since against go "
+                    + "came right used take three house book read water light night think thought nothing "
+                    + "something everything children school history language question next zero quite "
+                    + "jump box quick lazy fox who why when"
+    };
+
+    /**
+     * Amount of weights per language. Must be a power of two.
+     */
+    private static final int BUCKETS = 1 << 12;
+    /**
+     * How much more likely a common n-gram makes a language compared to an
+     * n-gram that isn't in its profile at all.
+     */
+    private static final double FREQUENCY_SCALE = 1000;
+    /**
+     * Segments with fewer letters than this are too short to be identified
+     * reliably by their n-grams, only by their script.
+     */
+    public static final int MIN_SEGMENT_LETTERS = 12;
+
+    /**
+     * Weight of every hashed n-gram for every language, indexed by language,
+     * then by the hash of the n-gram.
+     */
+    private final float[][] weights = new float[LANGUAGES.length][BUCKETS];
+
+    /**
+     * Builds the profiles of all known languages.
+     */
+    public LanguageIdentifier() {
+        for (int language = 0; language < LANGUAGES.length; language++) {
+            int[] counts = new int[BUCKETS];
+            String sample = SAMPLES[language];
+            int total = extractFeatures(sample, 0, sample.length(), feature -> counts[feature]++);
+            for (int i = 0; i < BUCKETS; i++) {
+                weights[language][i] = (float)Math.log1p(FREQUENCY_SCALE * counts[i] / total);
+            }
+        }
+    }
+
+    /**
+     * Identifies the language of a part of a text.
+     * @param text The text.
+     * @param start Index of the first character of the part.
+     * @param end Index after the last character of the part.
+     * @return Code of the most likely language. If the part has no letters,
+     * the first known language, "bg".
+     */
+    public String identify(CharSequence text, int start, int end) {
+        return identify(text, start, end, 1, LANGUAGES[0]);
+    }
+
+    /**
+     * Identifies the language of a part of a text, such as a sentence, if
+     * it's long enough to tell. Shorter parts whose letters are all in the
+     * script of one language, such as "Да.", are identified by the script.
+     * @param text The text.
+     * @param start Index of the first character of the part.
+     * @param end Index after the last character of the part.
+     * @param fallback Returned if the part has fewer than
+     *                 {@link LanguageIdentifier#MIN_SEGMENT_LETTERS} letters
+     *                 and they aren't all in the same known script.
+     * @return Code of the most likely language, or the fallback.
+     */
+    public String identifySegment(CharSequence text, int start, int end, String fallback) {
+        return identify(text, start, end, MIN_SEGMENT_LETTERS, fallback);
+    }
+
+    private String identify(CharSequence text, int start, int end, int minLetters, String fallback) {
+        double[] scores = new double[LANGUAGES.length];
+        int letters = extractFeatures(text, start, end, feature -> {
+            for (int language = 0; language < scores.length; language++) {
+                scores[language] += weights[language][feature];
+            }
+        });
+        if (letters < minLetters) {
+            String language = identifyScript(text, start, end);
+            return language != null ? language : fallback;
+        }
+        int best = 0;
+        for (int language = 1; language < scores.length; language++) {
+            if (scores[language] > scores[best]) best = language;
+        }
+        return LANGUAGES[best];
+    }
+
+    /**
+     * Identifies the language of a part of a text by the script of its
+     * letters.
+     * @param text The text.
+     * @param start Index of the first character of the part.
+     * @param end Index after the last character of the part.
+     * @return Code of the language written in the script of all letters, or
+     * null if there are no letters, they are in different scripts or in a
+     * script of no known language.
+     */
+    private String identifyScript(CharSequence text, int start, int end) {
+        int found = -1;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetter(c)) continue;
+            Character.UnicodeScript script = Character.UnicodeScript.of(c);
+            if (found != -1 && SCRIPTS[found] == script) continue;
+            if (found != -1) return null;
+            for (int language = 0; language < SCRIPTS.length && found == -1; language++) {
+                if (SCRIPTS[language] == script) found = language;
+            }
+            if (found == -1) return null;
+        }
+        return found == -1 ? null : LANGUAGES[found];
+    }
+
+    /**
+     * Goes through the n-grams of a part of a text. Letters are compared
+     * case-insensitively, and everything between them is treated as a
+     * single space, so n-grams at the start and end of words are included.
+     * @param text The text.
+     * @param start Index of the first character of the part.
+     * @param end Index after the last character of the part.
+     * @param visitor Receives the hash of every n-gram.
+     * @return The amount of letters in the part.
+     */
+    private int extractFeatures(CharSequence text, int start, int end, FeatureVisitor visitor) {
+        int letters = 0;
+        char previous2 = ' ', previous = ' ';
+        for (int i = start; i <= end; i++) {
+            // an extra space at the end closes the last word
+            char c = i < end ? text.charAt(i) : ' ';
+            if (Character.isLetter(c)) {
+                c = Character.toLowerCase(c);
+                letters++;
+                visitor.visit(hash(1, ' ', ' ', c));
+            } else {
+                if (previous == ' ') continue;
+                c = ' ';
+            }
+            visitor.visit(hash(2, ' ', previous, c));
+            visitor.visit(hash(3, previous2, previous, c));
+            previous2 = previous;
+            previous = c;
+        }
+        return letters;
+    }
+
+    private static int hash(int order, char a, char b, char c) {
+        int h = order;
+        h = h * 0x01000193 ^ a;
+        h = h * 0x01000193 ^ b;
+        h = h * 0x01000193 ^ c;
+        h ^= h >>> 15;
+        h *= 0x2C1B3C6D;
+        h ^= h >>> 13;
+        return h & (BUCKETS - 1);
+    }
+
+    /**
+     * Receives the hashed n-grams of a text.
+     */
+    private interface FeatureVisitor {
+        void visit(int feature);
+    }
+}
@@ -0,0 +1,107 @@
+package bookreader.utils;
+
+import java.util.Arrays;
+
+/**
+ * Maps the words of a text to the sentences they belong to, so that the
+ * sentence of a word and the words of a sentence can be found without going
+ * through the text again. A sentence ends with a word that ends with a
+ * sentence ending character, or with the last word of the text.
+ * Words can be added after the index is built, for texts that are loaded
+ * part by part.
+ * @see TextUtils#getSentenceEndingChars()
+ */
+public class SentenceIndex {
+
+    /**
+     * Index of the sentence of every word.
+     */
+    private int[] sentenceOfWord;
+    /**
+     * Index of the first word of every sentence.
+     */
+    private int[] sentenceStarts;
+    private int wordCount = 0;
+    private int sentenceCount = 0;
+    /**
+     * Whether the last added word ends a sentence, so the next word starts
+     * a new one.
+     */
+    private boolean lastEndsSentence = false;
+
+    /**
+     * Creates an empty index.
+     */
+    public SentenceIndex() {
+        this.sentenceOfWord = new int[16];
+        this.sentenceStarts = new int[4];
+    }
+
+    /**
+     * Creates the index of a tokenized text.
+     * @param words The words of the text.
+     */
+    public SentenceIndex(TokenizedText words) {
+        this.sentenceOfWord = new int[Math.max(words.size(), 16)];
+        this.sentenceStarts = new int[4];
+        for (int i = 0; i < words.size(); i++) {
+            addWord(words.endsSentence(i));
+        }
+    }
+
+    /**
+     * Adds a word after the last one.
+     * @param endsSentence Whether the word ends a sentence.
+     */
+    public void addWord(boolean endsSentence) {
+        if (wordCount == 0 || lastEndsSentence) {
+            if (sentenceCount == sentenceStarts.length) {
+                sentenceStarts = Arrays.copyOf(sentenceStarts, sentenceCount * 2);
+            }
+            sentenceStarts[sentenceCount++] = wordCount;
+        }
+        if (wordCount == sentenceOfWord.length) {
+            sentenceOfWord = Arrays.copyOf(sentenceOfWord, wordCount * 2);
+        }
+        sentenceOfWord[wordCount++] = sentenceCount - 1;
+        lastEndsSentence = endsSentence;
+    }
+
+    /**
+     * @return The amount of words in the index.
+     */
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * @return The amount of sentences in the index.
+     */
+    public int getSentenceCount() {
+        return sentenceCount;
+    }
+
+    /**
+     * @param word Index of a word.
+     * @return Index of the sentence containing the word.
+     */
+    public int sentenceOf(int word) {
+        return sentenceOfWord[word];
+    }
+
+    /**
+     * @param sentence Index of a sentence.
+     * @return Index of the first word of the sentence.
+     */
+    public int firstWord(int sentence) {
+        return sentenceStarts[sentence];
+    }
+
+    /**
+     * @param sentence Index of a sentence.
+     * @return Index of the last word of the sentence.
+     */
+    public int lastWord(int sentence) {
+        return sentence + 1 < sentenceCount ? sentenceStarts[sentence + 1] - 1 : wordCount - 1;
+    }
+}
@@ -4,7 +4,6 @@ import javafx.util.Duration;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -19,10 +18,7 @@ public class TextUtils {
             '.', '?', '!'
     );
 
-    private final Set<Character> commonLatingCyrillicChars = Set.of(
-            'a', 'c', 'e', 'o', 'p', 'x', 'y',
-            'а', 'с', 'е', 'о', 'р', 'х', 'у'
-    );
+    private final LanguageIdentifier languageIdentifier = new LanguageIdentifier();
 
     /**
      * Splits a text into individual words. Words are considered separate
@@ -32,7 +28,36 @@ public class TextUtils {
      * @return List of strings containing all separate words.
      */
     public List<String> splitTextToWords(String text) {
-        return Arrays.stream(text.split("[ \n]")).filter(x -> !x.isEmpty()).toList();
+        return tokenize(text).toList();
+    }
+
+    /**
+     * Finds the words of a text without copying them. Words are separated
+     * the same way as in {@link TextUtils#splitTextToWords(String)}. Every
+     * word is also marked if it ends a sentence or is followed by a new line.
+     * @param text Text to tokenize.
+     * @return Offsets of the words in the text.
+     */
+    public TokenizedText tokenize(CharSequence text) {
+        // most words are shorter than this, so the arrays rarely need to grow
+        TokenizedText tokens = new TokenizedText(text, text.length() / 6 + 1);
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : '\n';
+            if (c != ' ' && c != '\n') {
+                if (start == -1) start = i;
+                continue;
+            }
+            if (start != -1) {
+                int last = i - 1;
+                while (last > start && text.charAt(last) < ' ') last--;
+                byte flag = sentenceEndingChars.contains(text.charAt(last)) ? TokenizedText.SENTENCE_END : 0;
+                tokens.add(start, i, flag);
+                start = -1;
+            }
+            if (c == '\n' && i < text.length()) tokens.markLineEnd();
+        }
+        return tokens;
     }
 
     /**
@@ -47,25 +72,115 @@ public class TextUtils {
         return ret.toString().trim();
     }
 
+    /**
+     * Aligns two versions of the same list of words, such as a draft and a
+     * refined recognition of a picture, with the least amount of word
+     * insertions, deletions and substitutions. The common start and end of
+     * both lists are matched directly, only the part between them is aligned.
+     * @param from The old version.
+     * @param to The new version.
+     * @return For every word of the old version, the index of the word it
+     * became in the new version, or -1 if it was removed.
+     */
+    public int[] alignWords(List<String> from, List<String> to) {
+        int[] mapping = new int[from.size()];
+        int prefix = 0;
+        while (prefix < from.size() && prefix < to.size() && from.get(prefix).equals(to.get(prefix))) {
+            mapping[prefix] = prefix;
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < from.size() - prefix && suffix < to.size() - prefix
+                && from.get(from.size() - 1 - suffix).equals(to.get(to.size() - 1 - suffix))) {
+            mapping[from.size() - 1 - suffix] = to.size() - 1 - suffix;
+            suffix++;
+        }
+
+        int n = from.size() - prefix - suffix;
+        int m = to.size() - prefix - suffix;
+        int[][] distance = new int[n + 1][m + 1];
+        for (int i = 0; i <= n; i++) distance[i][0] = i;
+        for (int j = 0; j <= m; j++) distance[0][j] = j;
+        for (int i = 1; i <= n; i++) {
+            for (int j = 1; j <= m; j++) {
+                int substitution = from.get(prefix + i - 1).equals(to.get(prefix + j - 1)) ? 0 : 1;
+                distance[i][j] = Math.min(distance[i - 1][j - 1] + substitution,
+                        Math.min(distance[i - 1][j], distance[i][j - 1]) + 1);
+            }
+        }
+
+        int i = n, j = m;
+        while (i > 0) {
+            int substitution = j > 0 && from.get(prefix + i - 1).equals(to.get(prefix + j - 1)) ? 0 : 1;
+            if (j > 0 && distance[i][j] == distance[i - 1][j - 1] + substitution) {
+                mapping[prefix + i - 1] = prefix + j - 1;
+                i--;
+                j--;
+            } else if (distance[i][j] == distance[i - 1][j] + 1) {
+                mapping[prefix + i - 1] = -1;
+                i--;
+            } else {
+                j--;
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * Calculates the character error rate of a recognised text, which is the
+     * Levenshtein distance between it and the correct text divided by the
+     * length of the correct text. Runs of whitespace count as a single space
+     * in both texts.
+     * @param reference The correct text.
+     * @param hypothesis The recognised text.
+     * @return The error rate. 0 means the texts are equal, values above 1 are
+     * possible when the recognised text is much longer.
+     */
+    public double characterErrorRate(String reference, String hypothesis) {
+        String a = reference.strip().replaceAll("\\s+", " ");
+        String b = hypothesis.strip().replaceAll("\\s+", " ");
+        if (a.isEmpty()) return b.isEmpty() ? 0 : 1;
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(previous[j - 1] + substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return (double)previous[b.length()] / a.length();
+    }
+
     /**
      * Splits the given text into individual sentences. Sentences are separated by
      * '.', '?' or '!', followed by an empty space (interval or new line).
+     * Control characters between the two, like the '\r' of a Windows line
+     * ending, don't prevent the split and are left out of the sentence.
      * @param text Text to split.
      * @return A list containing all sentences.
+     * @see SentenceIndex
      */
     public List<String> splitTextToSentences(String text) {
         List<String> ret = new ArrayList<>();
-        StringBuilder curSentence = new StringBuilder();
-        for (int i = 0; i < text.length(); i++) {
-            curSentence.append(text.charAt(i));
-            if (sentenceEndingChars.contains(text.charAt(i)) &&
-                    (i == text.length() - 1 || text.charAt(i+1) == ' ' || text.charAt(i+1) == '\n')) {
-                ret.add(curSentence.toString());
-                curSentence.setLength(0);
-                i++;
-            }
+        TokenizedText words = tokenize(text);
+        SentenceIndex sentences = new SentenceIndex(words);
+        int from = 0;
+        for (int i = 0; i < sentences.getSentenceCount(); i++) {
+            int last = sentences.lastWord(i);
+            // the text after the last sentence belongs to it if it isn't finished
+            if (!words.endsSentence(last)) break;
+            int end = words.end(last), to = end;
+            while (text.charAt(to - 1) < ' ') to--;
+            ret.add(text.substring(from, to));
+            // the empty space after the end of a sentence is skipped
+            from = end + 1;
         }
-        if (curSentence.length() != 0) ret.add(curSentence.toString());
+        if (from < text.length()) ret.add(text.substring(from));
         return ret;
     }
 
@@ -79,26 +194,62 @@ public class TextUtils {
     }
 
     /**
-     * Determines the language of a given string. The function checks for the appearance
-     * of cyrillic and latin letters and compares it. If the text is very long, only the
-     * first 1000 letters are used to compare.
+     * Determines the language of a given string, see
+     * {@link LanguageIdentifier}.
      * @param text Text to check.
-     * @return The string "bg" if latin appears more, "en" otherwise.
+     * @return The string "en" if the text is in English, "bg" otherwise.
      */
-    public String getLanguage(String text) {
-        int cyrillic = 0;
-        int latin = 0;
-
-        for (int i = 0; i < 1000 && i < text.length(); i++) {
-            char c = text.charAt(i);
-
-            if (commonLatingCyrillicChars.contains(c)) continue;
+    public String getLanguage(CharSequence text) {
+        return languageIdentifier.identify(text, 0, text.length());
+    }
 
-            if (('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z')) latin++;
-            else if (('а' <= c && c <= 'я') || ('А' <= c && c <= 'Я')) cyrillic++;
+    /**
+     * Determines the language of every sentence of a text, so that quotes
+     * and chapters in another language are recognised and read correctly.
+     * Sentences too short to tell get the language of their script, or if
+     * they mix scripts, the language of the sentence before them.
+     * @param words The words of the text.
+     * @param sentences The sentences of the text.
+     * @return The language code of every sentence.
+     * @see TextUtils#getLanguage(CharSequence)
+     */
+    public String[] getSentenceLanguages(TokenizedText words, SentenceIndex sentences) {
+        CharSequence text = words.getText();
+        String[] languages = new String[sentences.getSentenceCount()];
+        String previous = null, textLanguage = null;
+        for (int i = 0; i < languages.length; i++) {
+            int start = words.start(sentences.firstWord(i));
+            int end = words.end(sentences.lastWord(i));
+            String language = languageIdentifier.identifySegment(text, start, end, previous);
+            if (language == null) {
+                // the text begins with short sentences, use the language of the whole text
+                if (textLanguage == null) textLanguage = getLanguage(text);
+                language = textLanguage;
+            }
+            languages[i] = previous = language;
         }
+        return languages;
+    }
 
-        return cyrillic >= latin ? "bg" : "en";
+    /**
+     * Determines the language of every word of a text by the sentence it's
+     * in.
+     * @param words The words of the text, as given by
+     *              {@link TextUtils#splitTextToWords(String)}.
+     * @return The language code of every word.
+     * @see TextUtils#getSentenceLanguages(TokenizedText, SentenceIndex)
+     */
+    public String[] getWordLanguages(List<String> words) {
+        StringBuilder text = new StringBuilder();
+        words.forEach(x -> text.append(x).append(' '));
+        TokenizedText tokens = tokenize(text);
+        SentenceIndex sentences = new SentenceIndex(tokens);
+        String[] sentenceLanguages = getSentenceLanguages(tokens, sentences);
+        String[] languages = new String[tokens.size()];
+        for (int i = 0; i < languages.length; i++) {
+            languages[i] = sentenceLanguages[sentences.sentenceOf(i)];
+        }
+        return languages;
     }
 
     /**
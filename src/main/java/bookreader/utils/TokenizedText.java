@@ -0,0 +1,134 @@
+package bookreader.utils;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The words of a text, stored as offsets into the original text instead of
+ * separate strings. Tokenizing a text allocates only a few arrays, no matter
+ * how many words it has. Words are separated by empty spaces and new lines,
+ * the same way as in {@link TextUtils#splitTextToWords(String)}.
+ * @see TextUtils#tokenize(CharSequence)
+ */
+public class TokenizedText {
+
+    /**
+     * Flag of a word that ends a sentence.
+     */
+    public static final byte SENTENCE_END = 1;
+    /**
+     * Flag of a word that is followed by a new line.
+     */
+    public static final byte LINE_END = 2;
+
+    private final CharSequence text;
+    private int[] starts;
+    private int[] ends;
+    private byte[] flags;
+    private int size;
+
+    TokenizedText(CharSequence text, int capacity) {
+        this.text = text;
+        this.starts = new int[Math.max(capacity, 1)];
+        this.ends = new int[starts.length];
+        this.flags = new byte[starts.length];
+    }
+
+    /**
+     * Adds a word after the last one.
+     * @param start Index of the first character of the word.
+     * @param end Index after the last character of the word.
+     * @param flag Combination of {@link TokenizedText#SENTENCE_END} and
+     *             {@link TokenizedText#LINE_END}.
+     */
+    void add(int start, int end, byte flag) {
+        if (size == starts.length) {
+            int capacity = starts.length * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        flags[size] = flag;
+        size++;
+    }
+
+    /**
+     * Marks the last word as followed by a new line.
+     */
+    void markLineEnd() {
+        if (size > 0) flags[size - 1] |= LINE_END;
+    }
+
+    /**
+     * @return The original text.
+     */
+    public CharSequence getText() {
+        return text;
+    }
+
+    /**
+     * @return The amount of words.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index Index of a word.
+     * @return Index of the first character of the word in the text.
+     */
+    public int start(int index) {
+        return starts[index];
+    }
+
+    /**
+     * @param index Index of a word.
+     * @return Index after the last character of the word in the text.
+     */
+    public int end(int index) {
+        return ends[index];
+    }
+
+    /**
+     * @param index Index of a word.
+     * @return True if the word ends with a sentence ending character.
+     * @see TextUtils#getSentenceEndingChars()
+     */
+    public boolean endsSentence(int index) {
+        return (flags[index] & SENTENCE_END) != 0;
+    }
+
+    /**
+     * @param index Index of a word.
+     * @return True if the word is followed by a new line, before the next
+     * word.
+     */
+    public boolean endsLine(int index) {
+        return (flags[index] & LINE_END) != 0;
+    }
+
+    /**
+     * Gets a word as a view over the original text, without copying it.
+     * @param index Index of the word.
+     * @return The characters of the word.
+     */
+    public CharSequence word(int index) {
+        return CharBuffer.wrap(text, starts[index], ends[index]);
+    }
+
+    /**
+     * Copies all words into separate strings.
+     * @return List of the words.
+     */
+    public List<String> toList() {
+        List<String> words = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            words.add(text.subSequence(starts[i], ends[i]).toString());
+        }
+        return words;
+    }
+}
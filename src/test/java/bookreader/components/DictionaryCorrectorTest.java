@@ -0,0 +1,58 @@
+package bookreader.components;
+
+import bookreader.utils.TextUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DictionaryCorrectorTest {
+
+    @TempDir
+    static Path folder;
+
+    private static DictionaryCorrector dictionaryCorrector;
+
+    @BeforeAll
+    public static void before() throws IOException {
+        Path wordlist = folder.resolve("wordlist.txt");
+        Files.writeString(wordlist, "котка\nкуче\nкучета\nкнига\nсок\ncards\ncarts\nspider\n", StandardCharsets.UTF_8);
+        dictionaryCorrector = new DictionaryCorrector(new TextUtils(),
+                folder.resolve("dictionary.dawg").toString(), wordlist.toString(), 1, 4);
+    }
+
+    @Test
+    public void testCorrectKeepsCase() {
+        assertThat(dictionaryCorrector.correct("котьа Котьа КОТЬА")).isEqualTo("котка Котка КОТКА");
+    }
+
+    @Test
+    public void testCorrectKeepsPunctuation() {
+        assertThat(dictionaryCorrector.correct("(кучс), \"книгя\"!")).isEqualTo("(куче), \"книга\"!");
+    }
+
+    @Test
+    public void testCorrectSkipsShortWords() {
+        // "сох" is one letter away from "сок", but shorter than the minimum length
+        assertThat(dictionaryCorrector.correct("сох spidr")).isEqualTo("сох spider");
+    }
+
+    @Test
+    public void testCorrectLeavesWordsUnchanged() {
+        // known words, words with digits and words without a close match
+        String text = "Котка кучета кни3а xyzzy";
+        assertThat(dictionaryCorrector.correct(text)).isSameAs(text);
+    }
+
+    @Test
+    public void testCorrectLeavesTiesUnchanged() {
+        // "cards" and "carts" are both one letter away
+        assertThat(dictionaryCorrector.correct("carcs")).isEqualTo("carcs");
+    }
+}
@@ -0,0 +1,71 @@
+package bookreader.components;
+
+import bookreader.utils.TextUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TextFiltererTest {
+
+    private static TextUtils textUtils;
+    private static TextFilterer textFilterer;
+
+    @BeforeAll
+    public static void before() {
+        textUtils = new TextUtils();
+        textFilterer = new TextFilterer(textUtils, new DictionaryCorrector(textUtils, "", "", 1, 4));
+    }
+
+    /**
+     * The filter as it was before it was compiled into a single pass.
+     */
+    private String filterWithRegex(String raw) {
+        String textLanguage = textUtils.getLanguage(raw);
+        raw = raw.trim().replaceAll(" +", " ");
+        raw = raw.replaceAll("-\\n", "");
+        raw = raw.replaceAll("\\n", " ");
+        if (textLanguage.equals("bg")) {
+            raw = raw.replaceAll("B", "в");
+            raw = raw.replaceAll("H", "н");
+            raw = raw.replaceAll("[kK]","к");
+            raw = raw.replaceAll("m", "м");
+            raw = raw.replaceAll("n", "н");
+            raw = raw.replaceAll("[pP]", "р");
+            raw = raw.replaceAll("[xX]", "х");
+            raw = raw.replaceAll("y", "у");
+        }
+        return raw.replaceAll("[©|\\[\\]{}<>]", "");
+    }
+
+    @Test
+    public void testFilterTextFromImage() {
+        assertThat(textFilterer.filterTextFromImage("  Паяците  са раз-\nред [бе3гръбначни]\nхищни Hасекоми  \n"))
+                .isEqualTo("Паяците са разред бе3гръбначни хищни насекоми");
+        assertThat(textFilterer.filterTextFromImage("Spiders are  air-\nbreathing |arthropods"))
+                .isEqualTo("Spiders are airbreathing arthropods");
+    }
+
+    @Test
+    public void testReplaceDigitsWithCyrillicLetters() {
+        assertThat(textFilterer.replaceDigitsWithCyrillicLetters(" 6ъл8и  на\n68 страници "))
+                .isEqualTo("вълви на 68 страници");
+    }
+
+    @Test
+    public void testFilterTextFromImageMatchesRegex() {
+        String alphabet = "  \n\n--\t\rBHkKmnpPxXy©|[]{}<>aeoабвгдежзийклмнопрстуфхцчшщъьюя.,";
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int j = 0; j < length; j++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String raw = text.toString();
+            assertThat(textFilterer.filterTextFromImage(raw)).as(raw).isEqualTo(filterWithRegex(raw));
+        }
+    }
+}
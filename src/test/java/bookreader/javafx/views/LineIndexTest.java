@@ -0,0 +1,59 @@
+package bookreader.javafx.views;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LineIndexTest {
+
+    /**
+     * Three lines of height 10. The first one has words at 0-20, 30-40 and
+     * 50-90, the second one a single word at 0-100 and the third one words
+     * at 0-10 and 20-30.
+     */
+    private static LineIndex createIndex() {
+        return new LineIndex(new int[]{0, 3, 4}, 3, new double[]{0, 10, 20, 30},
+                new double[]{0, 30, 50, 0, 0, 20}, new double[]{20, 10, 40, 100, 10, 10}, 6);
+    }
+
+    @Test
+    public void testFindLineAt() {
+        LineIndex index = createIndex();
+        assertThat(index.findLineAt(-1)).isEqualTo(-1);
+        assertThat(index.findLineAt(0)).isEqualTo(0);
+        assertThat(index.findLineAt(9.9)).isEqualTo(0);
+        assertThat(index.findLineAt(10)).isEqualTo(1);
+        assertThat(index.findLineAt(29.9)).isEqualTo(2);
+        assertThat(index.findLineAt(30)).isEqualTo(-1);
+        assertThat(index.findClosestLine(-5)).isEqualTo(0);
+        assertThat(index.findClosestLine(100)).isEqualTo(2);
+        assertThat(index.getLastWordOfLine(2)).isEqualTo(5);
+    }
+
+    @Test
+    public void testFindWordAt() {
+        LineIndex index = createIndex();
+        assertThat(index.findWordAt(5, 5)).isEqualTo(0);
+        assertThat(index.findWordAt(35, 5)).isEqualTo(1);
+        assertThat(index.findWordAt(90, 5)).isEqualTo(2);
+        // between two words and after the last one
+        assertThat(index.findWordAt(25, 5)).isEqualTo(-1);
+        assertThat(index.findWordAt(95, 5)).isEqualTo(-1);
+        assertThat(index.findWordAt(99, 15)).isEqualTo(3);
+        assertThat(index.findWordAt(5, 35)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testFindWordAboveOrBelow() {
+        LineIndex index = createIndex();
+        // centered at 35, the closest edge below is 30
+        assertThat(index.findWordAboveOrBelow(1, 0, 1)).isEqualTo(3);
+        assertThat(index.findWordAboveOrBelow(3, 1, 1)).isEqualTo(5);
+        // centered at 50, inside the third word above it
+        assertThat(index.findWordAboveOrBelow(3, 1, -1)).isEqualTo(2);
+        // centered at 5, inside the first word above it
+        assertThat(index.findWordAboveOrBelow(4, 2, -1)).isEqualTo(3);
+        assertThat(index.findWordAboveOrBelow(0, 0, -1)).isEqualTo(-1);
+        assertThat(index.findWordAboveOrBelow(5, 2, 1)).isEqualTo(-1);
+    }
+}
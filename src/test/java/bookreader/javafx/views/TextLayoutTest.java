@@ -0,0 +1,92 @@
+package bookreader.javafx.views;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TextLayoutTest {
+
+    private static final double SPACE = 10, LINE_HEIGHT = 12;
+
+    @Test
+    public void testBreakIntoLines() {
+        TextLayout layout = TextLayout.of(new double[]{30, 40, 20}, SPACE, LINE_HEIGHT, 100);
+        assertThat(layout.getLineCount()).isEqualTo(2);
+        assertThat(layout.getLastWordOfLine(0)).isEqualTo(1);
+        assertThat(layout.getWordX(1)).isEqualTo(40);
+        // 90 + 20 is wider than the line
+        assertThat(layout.getLineOfWord(2)).isEqualTo(1);
+        assertThat(layout.getWordX(2)).isEqualTo(0);
+        assertThat(layout.getLineY(1)).isEqualTo(LINE_HEIGHT);
+        assertThat(layout.getHeight()).isEqualTo(2 * LINE_HEIGHT);
+    }
+
+    @Test
+    public void testWordExactlyFillingLine() {
+        // the space after the last word of a line doesn't have to fit
+        TextLayout layout = TextLayout.of(new double[]{45, 45, 10}, SPACE, LINE_HEIGHT, 100);
+        assertThat(layout.getLineOfWord(1)).isEqualTo(0);
+        assertThat(layout.getWordX(1)).isEqualTo(55);
+        assertThat(layout.getLineOfWord(2)).isEqualTo(1);
+
+        layout = TextLayout.of(new double[]{100, 10}, SPACE, LINE_HEIGHT, 100);
+        assertThat(layout.getLineCount()).isEqualTo(2);
+        assertThat(layout.getFirstWordOfLine(1)).isEqualTo(1);
+    }
+
+    @Test
+    public void testWordWiderThanLine() {
+        TextLayout layout = TextLayout.of(new double[]{150, 10}, SPACE, LINE_HEIGHT, 100);
+        assertThat(layout.getLineCount()).isEqualTo(2);
+        assertThat(layout.getLineOfWord(0)).isEqualTo(0);
+        assertThat(layout.getWordX(1)).isEqualTo(0);
+
+        // a wide word in the middle gets a line of its own
+        layout = TextLayout.of(new double[]{10, 150, 10}, SPACE, LINE_HEIGHT, 100);
+        assertThat(layout.getLineCount()).isEqualTo(3);
+        assertThat(layout.getFirstWordOfLine(1)).isEqualTo(1);
+        assertThat(layout.getLastWordOfLine(1)).isEqualTo(1);
+        assertThat(layout.getFirstWordOfLine(2)).isEqualTo(2);
+    }
+
+    @Test
+    public void testAppend() {
+        TextLayout layout = TextLayout.of(new double[]{30, 40}, SPACE, LINE_HEIGHT, 100);
+        TextLayout appended = layout.append(new double[]{20, 50});
+        assertThat(layout.getWordCount()).isEqualTo(2);
+        assertThat(appended.getWordCount()).isEqualTo(4);
+        assertThat(appended.getLineCount()).isEqualTo(2);
+        assertThat(appended.getLineOfWord(2)).isEqualTo(1);
+        assertThat(appended.getWordX(3)).isEqualTo(30);
+        assertThat(appended.getWordWidth(3)).isEqualTo(50);
+        assertThat(appended.getLines().findWordAt(35, LINE_HEIGHT + 1)).isEqualTo(3);
+    }
+
+    @Test
+    public void testWithWidth() {
+        TextLayout layout = TextLayout.of(new double[]{30, 40, 20}, SPACE, LINE_HEIGHT, 100);
+        TextLayout wide = layout.withWidth(200);
+        assertThat(wide.getWidth()).isEqualTo(200);
+        assertThat(wide.getLineCount()).isEqualTo(1);
+        assertThat(wide.getWordX(2)).isEqualTo(90);
+
+        TextLayout narrow = layout.withWidth(50);
+        assertThat(narrow.getLineCount()).isEqualTo(3);
+        assertThat(narrow.getLineOfWord(2)).isEqualTo(2);
+        assertThat(layout.getLineCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testEmptyText() {
+        TextLayout layout = TextLayout.of(new double[0], SPACE, LINE_HEIGHT, 100);
+        assertThat(layout.getWordCount()).isEqualTo(0);
+        assertThat(layout.getLineCount()).isEqualTo(0);
+        assertThat(layout.getHeight()).isEqualTo(0);
+        assertThat(layout.getLines().findClosestLine(5)).isEqualTo(-1);
+        assertThat(layout.getLines().findWordAt(5, 5)).isEqualTo(-1);
+
+        TextLayout appended = layout.append(new double[]{20});
+        assertThat(appended.getLineCount()).isEqualTo(1);
+        assertThat(appended.getWordX(0)).isEqualTo(0);
+    }
+}
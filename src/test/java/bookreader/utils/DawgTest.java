@@ -0,0 +1,55 @@
+package bookreader.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DawgTest {
+
+    private static final List<String> WORDS = List.of(
+            "car", "card", "care", "cat", "cats", "dog", "dogs", "кот", "котка", "котки", "куче", "кучета");
+
+    @Test
+    public void testContains() {
+        Dawg dawg = Dawg.build(WORDS);
+        assertThat(dawg.getWordCount()).isEqualTo(WORDS.size());
+        WORDS.forEach(x -> assertThat(dawg.contains(x)).as(x).isTrue());
+        assertThat(dawg.contains("ca")).isFalse();
+        assertThat(dawg.contains("котк")).isFalse();
+        assertThat(dawg.contains("dogsa")).isFalse();
+        assertThat(dawg.contains("")).isFalse();
+    }
+
+    @Test
+    public void testFindClosest() {
+        Dawg dawg = Dawg.build(WORDS);
+        assertThat(dawg.findClosest("кучс", 1)).isEqualTo("куче");
+        assertThat(dawg.findClosest("dgs", 1)).isEqualTo("dogs");
+        assertThat(dawg.findClosest("cats", 1)).isEqualTo("cats");
+        // car, card and cat are all one letter away
+        assertThat(dawg.findClosest("cad", 1)).isNull();
+        assertThat(dawg.findClosest("куяета", 1)).isEqualTo("кучета");
+        assertThat(dawg.findClosest("xyz", 1)).isNull();
+    }
+
+    @Test
+    public void testWriteAndLoad(@TempDir Path folder) throws IOException {
+        Path file = folder.resolve("dictionary.dawg");
+        Dawg.build(WORDS).write(file);
+        Dawg loaded = Dawg.load(file);
+        assertThat(loaded.getWordCount()).isEqualTo(WORDS.size());
+        WORDS.forEach(x -> assertThat(loaded.contains(x)).as(x).isTrue());
+        assertThat(loaded.findClosest("котьа", 1)).isEqualTo("котка");
+    }
+
+    @Test
+    public void testUnsortedWords() {
+        assertThrows(IllegalArgumentException.class, () -> Dawg.build(List.of("b", "a")));
+    }
+}
@@ -3,6 +3,8 @@ package bookreader.utils;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -30,4 +32,80 @@ class TextUtilsTest {
         String mostlyEnglishText = "Spiders (order Araneae) are air-breathing arthropods that имат 8 крака.";
         assertThat(textUtils.getLanguage(mostlyEnglishText)).isEqualTo("en");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAlignWords() {
+        List<String> draft = List.of("Паяцнте", "са", "разред", "животни", "от", "клас");
+        List<String> refined = List.of("Паяците", "са", "разред", "хищни", "животни", "от", "клас");
+        assertThat(textUtils.alignWords(draft, refined)).containsExactly(0, 1, 2, 4, 5, 6);
+
+        List<String> shorter = List.of("Паяците", "разред", "животни");
+        assertThat(textUtils.alignWords(refined, shorter)).containsExactly(0, -1, 1, -1, 2, -1, -1);
+
+        assertThat(textUtils.alignWords(List.of(), refined)).isEmpty();
+        assertThat(textUtils.alignWords(draft, List.of())).containsOnly(-1);
+    }
+
+    @Test
+    public void testCharacterErrorRate() {
+        assertThat(textUtils.characterErrorRate("Паяците са хищници.", "Паяците  са\nхищници.")).isEqualTo(0);
+        assertThat(textUtils.characterErrorRate("abcd", "abxd")).isEqualTo(0.25);
+        assertThat(textUtils.characterErrorRate("abcd", "")).isEqualTo(1);
+        assertThat(textUtils.characterErrorRate("", "")).isEqualTo(0);
+    }
+
+    @Test
+    public void testTokenize() {
+        String text = " Паяците са  хищници.\nТе имат 8 крака! ";
+        TokenizedText words = textUtils.tokenize(text);
+        assertThat(words.toList()).containsExactly("Паяците", "са", "хищници.", "Те", "имат", "8", "крака!");
+        assertThat(words.toList()).isEqualTo(textUtils.splitTextToWords(text));
+        assertThat(words.start(1)).isEqualTo(9);
+        assertThat(words.end(1)).isEqualTo(11);
+        assertThat(words.word(2).toString()).isEqualTo("хищници.");
+        assertThat(words.endsSentence(2)).isTrue();
+        assertThat(words.endsLine(2)).isTrue();
+        assertThat(words.endsSentence(3)).isFalse();
+        assertThat(words.endsLine(3)).isFalse();
+        assertThat(words.endsSentence(6)).isTrue();
+        assertThat(textUtils.tokenize(" \n ").size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSplitTextToSentences() {
+        assertThat(textUtils.splitTextToSentences("Паяците са хищници. Имат ли крила?\nНе, 1.5 чифта  нямат"))
+                .containsExactly("Паяците са хищници.", "Имат ли крила?", "Не, 1.5 чифта  нямат");
+        assertThat(textUtils.splitTextToSentences("Имат ли крила?\r\nНе.\t Нямат"))
+                .containsExactly("Имат ли крила?", "Не.", "Нямат");
+        assertThat(textUtils.splitTextToSentences("")).isEmpty();
+    }
+
+    @Test
+    public void testSentenceIndex() {
+        SentenceIndex sentences = new SentenceIndex(textUtils.tokenize("Паяците са хищници. Имат ли крила? Не"));
+        assertThat(sentences.getWordCount()).isEqualTo(7);
+        assertThat(sentences.getSentenceCount()).isEqualTo(3);
+        assertThat(sentences.sentenceOf(2)).isEqualTo(0);
+        assertThat(sentences.sentenceOf(3)).isEqualTo(1);
+        assertThat(sentences.firstWord(1)).isEqualTo(3);
+        assertThat(sentences.lastWord(1)).isEqualTo(5);
+        assertThat(sentences.lastWord(2)).isEqualTo(6);
+
+        sentences.addWord(false);
+        sentences.addWord(true);
+        sentences.addWord(false);
+        assertThat(sentences.lastWord(2)).isEqualTo(8);
+        assertThat(sentences.sentenceOf(9)).isEqualTo(3);
+    }
+
+    @Test
+    public void testSentenceLanguages() {
+        String text = "Паяците са хищници. Ок. The end of the chapter came quickly. Да. Yes.";
+        TokenizedText words = textUtils.tokenize(text);
+        assertThat(textUtils.getSentenceLanguages(words, new SentenceIndex(words)))
+                .containsExactly("bg", "bg", "en", "bg", "en");
+        // a short sentence in both scripts takes the language of the text
+        assertThat(textUtils.getWordLanguages(List.of("Hi,", "Иво.", "Паяците", "са", "хищници.")))
+                .containsExactly("bg", "bg", "bg", "bg", "bg");
+    }
+}